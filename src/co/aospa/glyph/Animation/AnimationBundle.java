@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Indexed binary container for all animations of a device, generated at build
+ * time from the asset directories and read from a memory mapped buffer.
+ *
+ * All values are little endian:
+ *   header: magic "GLYB", u16 version, u16 entry count, u32 data offset
+ *   index:  per entry u16 path length, path (UTF-8, asset path without .csv),
+ *           u16 pattern length, u32 frame count, u32 block offset, u32 block length
+ *   data:   one frame block per entry
+ *
+ * A frame block is a varint stream over all values of all frames, each value
+ * stored as the zigzag encoded delta to the same value of the previous frame.
+ * Runs of unchanged values are stored as a 0 token followed by the run length.
+ */
+public final class AnimationBundle {
+
+    public static final String FILE_NAME = "animations.glyph";
+
+    private static final int MAGIC = 0x42594c47; // "GLYB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer mBuffer;
+    private final Map<String, Entry> mEntries;
+
+    private static final class Entry {
+        final int patternLength;
+        final int frameCount;
+        final int offset;
+        final int length;
+
+        Entry(int patternLength, int frameCount, int offset, int length) {
+            this.patternLength = patternLength;
+            this.frameCount = frameCount;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public AnimationBundle(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (mBuffer.getInt(0) != MAGIC)
+                throw new IOException("Invalid animation bundle magic");
+            int version = mBuffer.getShort(4) & 0xffff;
+            if (version != VERSION)
+                throw new IOException("Unsupported animation bundle version: " + version);
+
+            int count = mBuffer.getShort(6) & 0xffff;
+            int dataOffset = mBuffer.getInt(8);
+            mEntries = new HashMap<>(count * 2);
+
+            int position = HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                int pathLength = mBuffer.getShort(position) & 0xffff;
+                byte[] path = new byte[pathLength];
+                ByteBuffer slice = mBuffer.duplicate();
+                slice.position(position + 2);
+                slice.get(path);
+                position += 2 + pathLength;
+
+                Entry entry = new Entry(mBuffer.getShort(position) & 0xffff,
+                        mBuffer.getInt(position + 2), dataOffset + mBuffer.getInt(position + 6),
+                        mBuffer.getInt(position + 10));
+                position += 14;
+
+                if (entry.offset < dataOffset || entry.offset + entry.length > mBuffer.limit())
+                    throw new IOException("Animation bundle block out of bounds: "
+                            + new String(path, StandardCharsets.UTF_8));
+                mEntries.put(new String(path, StandardCharsets.UTF_8), entry);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated animation bundle", e);
+        }
+    }
+
+    public boolean contains(String path) {
+        return mEntries.containsKey(path);
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public Set<String> getPaths() {
+        return mEntries.keySet();
+    }
+
+    /** Returns the pattern length of the animation at the given path, or -1. */
+    public int getPatternLength(String path) {
+        Entry entry = mEntries.get(path);
+        return entry != null ? entry.patternLength : -1;
+    }
+
+    /** Returns the frame count of the animation at the given path, or -1. */
+    public int getFrameCount(String path) {
+        Entry entry = mEntries.get(path);
+        return entry != null ? entry.frameCount : -1;
+    }
+
+    /** Decodes the animation stored at the given path, or returns null if there is none. */
+    public GlyphAnimation decode(String name, String path) throws IOException {
+        Entry entry = mEntries.get(path);
+        if (entry == null) return null;
+
+        // Absolute reads on a private view, so concurrent decodes don't interfere
+        ByteBuffer block = mBuffer.duplicate();
+        block.limit(entry.offset + entry.length);
+        block.position(entry.offset);
+
+        int[][] frames = new int[entry.frameCount][entry.patternLength];
+        int[] previous = new int[entry.patternLength];
+        int run = 0;
+        try {
+            for (int[] frame : frames) {
+                for (int i = 0; i < entry.patternLength; i++) {
+                    if (run == 0) {
+                        int token = readVarint(block);
+                        if (token == 0) {
+                            run = readVarint(block);
+                        } else {
+                            frame[i] = previous[i] + ((token >>> 1) ^ -(token & 1));
+                            continue;
+                        }
+                    }
+                    run--;
+                    frame[i] = previous[i];
+                }
+                previous = frame;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated animation block | name: " + name, e);
+        }
+
+        return new GlyphAnimation(name, entry.patternLength, frames);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /** Writes a bundle of the given animations, keyed by their asset path. */
+    public static void write(OutputStream out, SortedMap<String, GlyphAnimation> animations)
+            throws IOException {
+        if (animations.size() > 0xffff)
+            throw new IOException("Too many animations: " + animations.size());
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (Map.Entry<String, GlyphAnimation> entry : animations.entrySet()) {
+            byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            GlyphAnimation animation = entry.getValue();
+            byte[] block = encodeFrames(animation);
+
+            ByteBuffer record = ByteBuffer.allocate(2 + path.length + 14)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            record.putShort((short) path.length).put(path)
+                    .putShort((short) animation.getPatternLength())
+                    .putInt(animation.getFrameCount())
+                    .putInt(data.size())
+                    .putInt(block.length);
+            index.write(record.array());
+            data.write(block);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) animations.size())
+                .putInt(HEADER_SIZE + index.size());
+
+        out.write(header.array());
+        index.writeTo(out);
+        data.writeTo(out);
+        out.flush();
+    }
+
+    private static byte[] encodeFrames(GlyphAnimation animation) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] previous = new int[animation.getPatternLength()];
+        int run = 0;
+        for (int f = 0; f < animation.getFrameCount(); f++) {
+            int[] frame = animation.getFrame(f);
+            for (int i = 0; i < frame.length; i++) {
+                int delta = frame[i] - previous[i];
+                if (delta == 0) {
+                    run++;
+                    continue;
+                }
+                if (run > 0) {
+                    writeVarint(out, 0);
+                    writeVarint(out, run);
+                    run = 0;
+                }
+                writeVarint(out, (delta << 1) ^ (delta >> 31));
+            }
+            previous = frame;
+        }
+        if (run > 0) {
+            writeVarint(out, 0);
+            writeVarint(out, run);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of all animations of the device, built once and immutable afterwards
+ * so it can be read from any thread. Every animation is found by category and
+ * name and carries its metadata, so callers don't need to open it.
+ */
+public final class AnimationCatalog {
+
+    private static final String TAG = "GlyphAnimationCatalog";
+    private static final boolean DEBUG = true;
+
+    public static final int CATEGORY_CALL = 0;
+    public static final int CATEGORY_NOTIFICATION = 1;
+    public static final int CATEGORY_SYSTEM = 2;
+
+    /** Asset directory of every category, indexed by category. */
+    private static final String[] DIRECTORIES = { "call", "notification", "" };
+
+    private final List<Map<String, Entry>> mEntries = new ArrayList<>(DIRECTORIES.length);
+    private final String[][] mNames = new String[DIRECTORIES.length][];
+
+    public static final class Entry {
+        private final String mName;
+        private final int mCategory;
+        private final String mPath;
+        private final int mPatternLength;
+        private final int mFrameCount;
+
+        Entry(String name, int category, String path, int patternLength, int frameCount) {
+            mName = name;
+            mCategory = category;
+            mPath = path;
+            mPatternLength = patternLength;
+            mFrameCount = frameCount;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getCategory() {
+            return mCategory;
+        }
+
+        /** Asset path of the animation without extension, also its bundle key. */
+        public String getPath() {
+            return mPath;
+        }
+
+        public int getPatternLength() {
+            return mPatternLength;
+        }
+
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        public long getDurationMs() {
+            return mFrameCount * GlyphAnimation.FRAME_DURATION_NANOS / 1_000_000L;
+        }
+    }
+
+    private AnimationCatalog(List<Entry> entries) {
+        for (int i = 0; i < DIRECTORIES.length; i++) {
+            mEntries.add(new HashMap<>());
+        }
+        for (Entry entry : entries) {
+            mEntries.get(entry.getCategory()).put(entry.getName(), entry);
+        }
+        for (int i = 0; i < DIRECTORIES.length; i++) {
+            String[] names = mEntries.get(i).keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            mNames[i] = names;
+        }
+
+        if (DEBUG) Log.d(TAG, "Built catalog | call: " + mNames[CATEGORY_CALL].length
+                + " | notification: " + mNames[CATEGORY_NOTIFICATION].length
+                + " | system: " + mNames[CATEGORY_SYSTEM].length);
+    }
+
+    /** Builds the catalog from the index of an animation bundle. */
+    public static AnimationCatalog fromBundle(AnimationBundle bundle) {
+        List<Entry> entries = new ArrayList<>(bundle.size());
+        for (String path : bundle.getPaths()) {
+            int slash = path.lastIndexOf('/');
+            int category = categoryOf(slash < 0 ? "" : path.substring(0, slash));
+            if (category < 0) continue;
+            entries.add(new Entry(path.substring(slash + 1), category, path,
+                    bundle.getPatternLength(path), bundle.getFrameCount(path)));
+        }
+        return new AnimationCatalog(entries);
+    }
+
+    private static int categoryOf(String directory) {
+        for (int i = 0; i < DIRECTORIES.length; i++) {
+            if (DIRECTORIES[i].equals(directory)) return i;
+        }
+        return -1;
+    }
+
+    /** Returns the animation of the given category and name, or null. */
+    public Entry get(int category, String name) {
+        return mEntries.get(category).get(name);
+    }
+
+    /** Returns the animation with the given name, looking at call, notification and system ones. */
+    public Entry find(String name) {
+        for (Map<String, Entry> entries : mEntries) {
+            Entry entry = entries.get(name);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    /** Returns the sorted names of all animations of a category. */
+    public String[] getNames(int category) {
+        return mNames[category];
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+
+import co.aospa.glyph.Profile.DeviceProfile;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Loads animations as native frames of the current device, remapping them
+ * through the device profile and keeping the results in a size bounded cache.
+ */
+public final class AnimationLoader {
+
+    private static final String TAG = "GlyphAnimationLoader";
+    private static final boolean DEBUG = true;
+
+    private static final int CACHE_SIZE_BYTES = 1024 * 1024;
+
+    private static final LruCache<String, GlyphAnimation> cache =
+            new LruCache<String, GlyphAnimation>(CACHE_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(String key, GlyphAnimation animation) {
+            return animation.getFrameCount() * animation.getPatternLength() * Integer.BYTES;
+        }
+    };
+
+    public static GlyphAnimation getAnimation(String name) throws IOException {
+        return load(name, ResourceUtils.getAnimationEntry(name));
+    }
+
+    public static GlyphAnimation getCallAnimation(String name) throws IOException {
+        return load(name, ResourceUtils.getCallAnimationEntry(name));
+    }
+
+    public static GlyphAnimation getNotificationAnimation(String name) throws IOException {
+        return load(name, ResourceUtils.getNotificationAnimationEntry(name));
+    }
+
+    private static GlyphAnimation load(String name, AnimationCatalog.Entry entry)
+            throws IOException {
+        if (entry == null)
+            throw new IOException("Animation not found | name: " + name);
+
+        String path = entry.getPath();
+        GlyphAnimation animation = cache.get(path);
+        if (animation != null) return animation;
+
+        GlyphAnimation parsed = decode(entry.getName(), path);
+        animation = AnimationRemapper.remap(parsed, DeviceProfile.get());
+        if (animation == null)
+            throw new IOException("Unsupported animation pattern length | name: " + name
+                    + " | length: " + parsed.getPatternLength());
+
+        if (DEBUG && animation != parsed) Log.d(TAG, "Remapped animation | name: " + name
+                + " | from: " + parsed.getPatternLength() + " | to: " + animation.getPatternLength());
+
+        cache.put(path, animation);
+        return animation;
+    }
+
+    private static GlyphAnimation decode(String name, String path) throws IOException {
+        GlyphAnimation animation = ResourceUtils.getAnimationBundle().decode(name, path);
+        if (animation == null)
+            throw new IOException("Animation not found in bundle | path: " + path);
+        return animation;
+    }
+
+    public static void clearCache() {
+        cache.evictAll();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the CSV animation format, one frame per line and one comma separated
+ * value per LED or zone, with an optional trailing comma.
+ */
+public final class AnimationParser {
+
+    public static GlyphAnimation parse(String name, InputStream stream) throws IOException {
+        List<int[]> frames = new ArrayList<>();
+        int patternLength = -1;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, StandardCharsets.US_ASCII))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.replace(" ", "").trim();
+                if (line.isEmpty()) continue;
+                line = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
+                String[] split = line.split(",");
+                if (patternLength == -1) {
+                    patternLength = split.length;
+                } else if (split.length != patternLength) {
+                    throw new IOException("Animation line length mismatch | name: " + name
+                            + " | line " + lineNumber + ": " + split.length + " != " + patternLength);
+                }
+                int[] frame = new int[patternLength];
+                for (int i = 0; i < patternLength; i++) {
+                    try {
+                        frame[i] = Integer.parseInt(split[i]);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid animation value | name: " + name
+                                + " | line " + lineNumber + ": " + split[i]);
+                    }
+                }
+                frames.add(frame);
+            }
+        }
+
+        if (frames.isEmpty())
+            throw new IOException("Empty animation | name: " + name);
+
+        return new GlyphAnimation(name, patternLength, frames.toArray(new int[0][]));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+import java.util.Arrays;
+
+import co.aospa.glyph.Profile.DeviceProfile;
+
+/**
+ * Converts animations authored for any known layout into native frames of the
+ * current device. Frames are first pooled into zones, then every LED takes the
+ * value of its zone, optionally smoothed along its segment group.
+ */
+public final class AnimationRemapper {
+
+    /** Returns the animation as native frames, or null if its layout is unknown. */
+    public static GlyphAnimation remap(GlyphAnimation animation, DeviceProfile profile) {
+        int ledCount = profile.getLedCount();
+        int patternLength = animation.getPatternLength();
+
+        if (patternLength == ledCount)
+            return animation;
+
+        int[] sourceZones = profile.getSourceZones(patternLength);
+        if (sourceZones == null)
+            return null;
+
+        int zoneCount = profile.getZoneCount();
+        boolean average = profile.isRemapAveragePooling();
+        boolean smoothing = profile.isRemapSmoothing() && patternLength < ledCount;
+        int[] zoneSizes = new int[zoneCount];
+        for (int zone : sourceZones) {
+            zoneSizes[zone]++;
+        }
+
+        int[] zoneFrame = new int[zoneCount];
+        int[][] frames = new int[animation.getFrameCount()][];
+        for (int f = 0; f < frames.length; f++) {
+            int[] source = animation.getFrame(f);
+
+            // Pool every zone of the source frame
+            Arrays.fill(zoneFrame, 0);
+            for (int i = 0; i < patternLength; i++) {
+                int zone = sourceZones[i];
+                zoneFrame[zone] = average ? zoneFrame[zone] + source[i]
+                        : Math.max(zoneFrame[zone], source[i]);
+            }
+            if (average) {
+                for (int z = 0; z < zoneCount; z++) {
+                    if (zoneSizes[z] > 1) zoneFrame[z] /= zoneSizes[z];
+                }
+            }
+
+            // Spread every zone over its LEDs
+            int[] frame = new int[ledCount];
+            for (int i = 0; i < ledCount; i++) {
+                frame[i] = zoneFrame[profile.getLedZone(i)];
+            }
+            if (smoothing) smooth(frame, profile.getSegments());
+            frames[f] = frame;
+        }
+
+        return new GlyphAnimation(animation.getName(), ledCount, frames);
+    }
+
+    /** Applies a [1 2 1] kernel along every segment group. */
+    private static void smooth(int[] frame, DeviceProfile.Segment[] segments) {
+        for (DeviceProfile.Segment segment : segments) {
+            if (segment.size() < 3) continue;
+            int previous = frame[segment.first];
+            for (int i = segment.first; i <= segment.last; i++) {
+                int current = frame[i];
+                int next = i < segment.last ? frame[i + 1] : current;
+                frame[i] = (previous + 2 * current + next) / 4;
+                previous = current;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Animation;
+
+/**
+ * A decoded animation, every frame holds one brightness value per LED or zone
+ * in the 0 - MAX_BRIGHTNESS range. Frames are played back at 60 fps.
+ */
+public final class GlyphAnimation {
+
+    public static final int MAX_BRIGHTNESS = 4095;
+    public static final long FRAME_DURATION_NANOS = 16_666_666L;
+
+    private final String mName;
+    private final int mPatternLength;
+    private final int[][] mFrames;
+
+    public GlyphAnimation(String name, int patternLength, int[][] frames) {
+        mName = name;
+        mPatternLength = patternLength;
+        mFrames = frames;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPatternLength() {
+        return mPatternLength;
+    }
+
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    public int[] getFrame(int index) {
+        return mFrames[index];
+    }
+
+    public long getDurationMs() {
+        return mFrames.length * FRAME_DURATION_NANOS / 1_000_000L;
+    }
+}
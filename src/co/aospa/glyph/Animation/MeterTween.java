@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Animation;
+
+/**
+ * Level meter moving towards its target at a constant speed. The position is
+ * fractional, the LED on its edge is lit at partial brightness. A new target
+ * takes over from the current position, so the meter never restarts.
+ */
+public final class MeterTween {
+
+    private final int mLevels;
+    private final float mLevelsPerNano;
+
+    private float mPosition = 0;
+    private float mTarget = 0;
+    private long mLastFrameNanos = -1;
+
+    public MeterTween(int levels, float levelsPerSecond) {
+        mLevels = levels;
+        mLevelsPerNano = levelsPerSecond / 1_000_000_000f;
+    }
+
+    public int getLevels() {
+        return mLevels;
+    }
+
+    public void setTarget(float target) {
+        mTarget = Math.max(0, Math.min(mLevels, target));
+    }
+
+    public void reset() {
+        mPosition = 0;
+        mTarget = 0;
+        mLastFrameNanos = -1;
+    }
+
+    /** Advances the meter to the given frame time, returns true while it is still moving. */
+    public boolean step(long frameTimeNanos) {
+        long elapsed = mLastFrameNanos < 0
+                ? GlyphAnimation.FRAME_DURATION_NANOS : frameTimeNanos - mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+
+        float distance = elapsed * mLevelsPerNano;
+        if (Math.abs(mTarget - mPosition) <= distance) {
+            mPosition = mTarget;
+        } else {
+            mPosition += mTarget > mPosition ? distance : -distance;
+        }
+
+        if (mPosition == mTarget) {
+            mLastFrameNanos = -1;
+            return false;
+        }
+        return true;
+    }
+
+    /** Writes the brightness of every level to the frame. */
+    public void fill(float[] frame, float maxBrightness) {
+        for (int i = 0; i < mLevels; i++) {
+            frame[i] = Math.max(0, Math.min(1, mPosition - i)) * maxBrightness;
+        }
+    }
+}
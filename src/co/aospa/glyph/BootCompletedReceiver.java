@@ -24,6 +24,7 @@ import android.content.Intent;
 import android.util.Log;
 
 import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Manager.WarmUpManager;
 import co.aospa.glyph.Utils.ServiceUtils;
 
 public class BootCompletedReceiver extends BroadcastReceiver {
@@ -35,6 +36,16 @@ public class BootCompletedReceiver extends BroadcastReceiver {
     public void onReceive(final Context context, Intent intent) {
         if (DEBUG) Log.d(TAG, "Received boot completed intent");
         Constants.CONTEXT = context.getApplicationContext();
-        ServiceUtils.checkGlyphService();
+
+        // Warm up off the main thread, services start once the engine is ready
+        final PendingResult result = goAsync();
+        new Thread(() -> {
+            try {
+                WarmUpManager.warmUp();
+                ServiceUtils.checkGlyphService();
+            } finally {
+                result.finish();
+            }
+        }, "GlyphWarmUp").start();
     }
 }
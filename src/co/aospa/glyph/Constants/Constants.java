@@ -18,6 +18,7 @@ package co.aospa.glyph.Constants;
 
 import android.content.Context;
 
+import co.aospa.glyph.Animation.GlyphAnimation;
 import co.aospa.glyph.Utils.ResourceUtils;
 
 public final class Constants {
@@ -26,7 +27,10 @@ public final class Constants {
     private static final boolean DEBUG = true;
 
     public static Context CONTEXT;
-    public static final int MAX_PATTERN_BRIGHTNESS = 4095;
+    public static final int MAX_PATTERN_BRIGHTNESS = GlyphAnimation.MAX_BRIGHTNESS;
+    // Floor of the essential LED while active, 60% of the pattern range
+    public static final int ESSENTIAL_PERCENT = 60;
+    public static final int ESSENTIAL_BRIGHTNESS = getPatternBrightness(ESSENTIAL_PERCENT);
 
     private static String device = null;
 
@@ -46,6 +50,8 @@ public final class Constants {
     public static final String GLYPH_CALL_SUB_PREVIEW = "glyph_settings_call_sub_preview";
     public static final String GLYPH_CALL_SUB_ANIMATIONS = "glyph_settings_call_sub_animations";
     public static final String GLYPH_CALL_SUB_ENABLE = "glyph_settings_call_sub_toggle";
+    public static final String GLYPH_CALL_CONTACT_PREFIX = "glyph_settings_call_contact_";
+    public static final String GLYPH_CALL_GROUP_PREFIX = "glyph_settings_call_group_";
     public static final String GLYPH_MUSIC_VISUALIZER_ENABLE = "glyph_settings_music_visualizer_toggle";
     public static final String GLYPH_NOTIFS_ENABLE = "glyph_settings_notifs_toggle";
     public static final String GLYPH_NOTIFS_SUB_PREVIEW = "glyph_settings_notifs_sub_preview";
@@ -69,6 +75,11 @@ public final class Constants {
         "com.android.systemui:BAT"
     };
 
+    /** Returns a percentage of the pattern range, in whole steps of one percent. */
+    public static int getPatternBrightness(int percent) {
+        return MAX_PATTERN_BRIGHTNESS / 100 * percent;
+    }
+
     public static String getDevice() {
         if (device == null)
             device = ResourceUtils.getString("glyph_settings_device");
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Contacts;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import co.aospa.glyph.Animation.AnimationCatalog;
+import co.aospa.glyph.Animation.AnimationLoader;
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Call animations of contacts and contact groups, by phone number. The map
+ * from number to animation is built from Contacts on a background thread and
+ * rebuilt when contacts or assignments change, so resolving the animation of
+ * an incoming call is a map lookup.
+ *
+ * Numbers are keyed by E.164 form, and by their caller ID min match for
+ * numbers that can't be formatted, the same way telephony matches callers.
+ * An animation of the contact itself wins over the one of its groups.
+ */
+public final class ContactAnimationCache {
+
+    private static final String TAG = "GlyphContactAnimationCache";
+    private static final boolean DEBUG = true;
+
+    // Contacts change in bursts while syncing, rebuild once they settle
+    private static final long REBUILD_DELAY_MS = 2000;
+
+    private static final String[] PHONE_PROJECTION = {
+        Phone.NUMBER, Phone.NORMALIZED_NUMBER, Phone.CONTACT_ID, Phone.LOOKUP_KEY,
+    };
+    private static final String[] GROUP_PROJECTION = {
+        GroupMembership.CONTACT_ID, GroupMembership.GROUP_ROW_ID,
+    };
+
+    private static final class Animations {
+        final Map<String, String> byNumber;
+        final Map<String, String> byMinMatch;
+
+        Animations(Map<String, String> byNumber, Map<String, String> byMinMatch) {
+            this.byNumber = byNumber;
+            this.byMinMatch = byMinMatch;
+        }
+    }
+
+    private final Context mContext;
+    private final TelephonyManager mTelephonyManager;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private volatile Animations mAnimations =
+            new Animations(Collections.emptyMap(), Collections.emptyMap());
+
+    private volatile int mRebuilds = 0;
+    private volatile long mLastRebuildMs = 0;
+    private volatile int mHits = 0;
+    private volatile int mMisses = 0;
+
+    public ContactAnimationCache(Context context) {
+        mContext = context;
+        mTelephonyManager = context.getSystemService(TelephonyManager.class);
+    }
+
+    public synchronized void start() {
+        if (mThread != null) return;
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        // Phone state broadcasts carry the incoming number only with READ_CALL_LOG
+        checkPermission(Manifest.permission.READ_CALL_LOG);
+
+        mContext.getContentResolver().registerContentObserver(
+                ContactsContract.AUTHORITY_URI, true, mContactsObserver);
+        PreferenceManager.getDefaultSharedPreferences(mContext)
+                .registerOnSharedPreferenceChangeListener(mPreferenceListener);
+        mHandler.post(mRebuild);
+    }
+
+    public synchronized void stop() {
+        if (mThread == null) return;
+        mContext.getContentResolver().unregisterContentObserver(mContactsObserver);
+        PreferenceManager.getDefaultSharedPreferences(mContext)
+                .unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+        mAnimations = new Animations(Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /** Returns the call animation of the given number, or null to play the default one. */
+    public String getAnimation(String number) {
+        if (TextUtils.isEmpty(number)) return null;
+        Animations animations = mAnimations;
+
+        String animation = null;
+        String key = formatNumber(number);
+        if (key != null) animation = animations.byNumber.get(key);
+        if (animation == null)
+            animation = animations.byMinMatch.get(PhoneNumberUtils.toCallerIDMinMatch(number));
+
+        if (animation != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return animation;
+    }
+
+    private synchronized void scheduleRebuild() {
+        if (mHandler == null) return;
+        mHandler.removeCallbacks(mRebuild);
+        mHandler.postDelayed(mRebuild, REBUILD_DELAY_MS);
+    }
+
+    private final Runnable mRebuild = this::rebuild;
+
+    private void rebuild() {
+        long start = SystemClock.elapsedRealtime();
+        if (!checkPermission(Manifest.permission.READ_CONTACTS)) {
+            mAnimations = new Animations(Collections.emptyMap(), Collections.emptyMap());
+            return;
+        }
+
+        Map<String, String> contactAnimations = filterAnimations(
+                SettingsManager.getGlyphCallContactAnimations());
+        Map<String, String> groupAnimations = filterAnimations(
+                SettingsManager.getGlyphCallGroupAnimations());
+
+        Map<String, String> byNumber = new HashMap<>();
+        Map<String, String> byMinMatch = new HashMap<>();
+        if (!contactAnimations.isEmpty() || !groupAnimations.isEmpty()) {
+            try (Cursor cursor = mContext.getContentResolver().query(
+                    Phone.CONTENT_URI, PHONE_PROJECTION, null, null, null)) {
+                Map<Long, String> groupAnimationOfContact = queryGroupAnimations(groupAnimations);
+                while (cursor != null && cursor.moveToNext()) {
+                    String animation = contactAnimations.get(cursor.getString(3));
+                    if (animation == null) animation = groupAnimationOfContact.get(cursor.getLong(2));
+                    if (animation == null) continue;
+
+                    String number = cursor.getString(0);
+                    String key = cursor.getString(1);
+                    if (key == null) key = formatNumber(number);
+                    if (key != null) byNumber.putIfAbsent(key, animation);
+                    if (number != null)
+                        byMinMatch.putIfAbsent(PhoneNumberUtils.toCallerIDMinMatch(number), animation);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to query contacts", e);
+                return;
+            }
+        }
+        mAnimations = new Animations(byNumber, byMinMatch);
+
+        // Decode ahead, so the first frame of a contact's call isn't late either
+        Set<String> names = new HashSet<>(byNumber.values());
+        names.addAll(byMinMatch.values());
+        for (String animation : names) {
+            try {
+                AnimationLoader.getCallAnimation(animation);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to decode call animation | name: " + animation, e);
+            }
+        }
+
+        mRebuilds++;
+        mLastRebuildMs = SystemClock.elapsedRealtime() - start;
+        if (DEBUG) Log.d(TAG, "Rebuilt cache | numbers: " + byNumber.size()
+                + " | took: " + mLastRebuildMs + " ms");
+    }
+
+    /** Returns the animation of every contact in one of the given groups. */
+    private Map<Long, String> queryGroupAnimations(Map<String, String> groupAnimations) {
+        Map<Long, String> animations = new HashMap<>();
+        if (groupAnimations.isEmpty()) return animations;
+
+        try (Cursor cursor = mContext.getContentResolver().query(ContactsContract.Data.CONTENT_URI,
+                GROUP_PROJECTION, ContactsContract.Data.MIMETYPE + " = ?",
+                new String[] { GroupMembership.CONTENT_ITEM_TYPE }, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                String animation = groupAnimations.get(Long.toString(cursor.getLong(1)));
+                if (animation != null) animations.putIfAbsent(cursor.getLong(0), animation);
+            }
+        }
+        return animations;
+    }
+
+    /** Drops assignments of animations which no longer exist. */
+    private static Map<String, String> filterAnimations(Map<String, String> animations) {
+        AnimationCatalog catalog = ResourceUtils.getAnimationCatalog();
+        animations.values().removeIf(
+                name -> catalog.get(AnimationCatalog.CATEGORY_CALL, name) == null);
+        return animations;
+    }
+
+    private boolean checkPermission(String permission) {
+        if (mContext.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED)
+            return true;
+        Log.w(TAG, "Missing " + permission + ", contact and group call animations won't play");
+        return false;
+    }
+
+    private String formatNumber(String number) {
+        if (number == null) return null;
+        String countryIso = mTelephonyManager.getNetworkCountryIso();
+        if (TextUtils.isEmpty(countryIso)) countryIso = mTelephonyManager.getSimCountryIso();
+        if (TextUtils.isEmpty(countryIso)) return null;
+        return PhoneNumberUtils.formatNumberToE164(number, countryIso.toUpperCase());
+    }
+
+    private final ContentObserver mContactsObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            scheduleRebuild();
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            (preferences, key) -> {
+        if (key != null && (key.startsWith(Constants.GLYPH_CALL_CONTACT_PREFIX)
+                || key.startsWith(Constants.GLYPH_CALL_GROUP_PREFIX)))
+            scheduleRebuild();
+    };
+
+    public void dump(PrintWriter pw) {
+        Animations animations = mAnimations;
+        pw.println("    contacts: numbers=" + animations.byNumber.size()
+                + " | rebuilds: " + mRebuilds + " | last rebuild: " + mLastRebuildMs + " ms"
+                + " | hits: " + mHits + " | misses: " + mMisses);
+    }
+}
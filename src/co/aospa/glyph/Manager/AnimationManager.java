@@ -16,19 +16,24 @@
 
 package co.aospa.glyph.Manager;
 
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.android.internal.util.ArrayUtils;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.aospa.glyph.Animation.AnimationLoader;
+import co.aospa.glyph.Animation.GlyphAnimation;
+import co.aospa.glyph.Animation.MeterTween;
 import co.aospa.glyph.Constants.Constants;
-import co.aospa.glyph.Utils.FileUtils;
+import co.aospa.glyph.Profile.DeviceProfile;
 import co.aospa.glyph.Utils.ResourceUtils;
 
 public final class AnimationManager {
@@ -36,13 +41,33 @@ public final class AnimationManager {
     private static final String TAG = "GlyphAnimationManager";
     private static final boolean DEBUG = true;
 
-    private static Future<?> submit(Runnable runnable) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        return executorService.submit(runnable);
+    private static final int MAX_QUEUED_ANIMATIONS = 4;
+
+    // Animations play one at a time on a single render thread, later ones queue behind it
+    private static final ThreadPoolExecutor renderExecutor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(MAX_QUEUED_ANIMATIONS),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+                runnable.run();
+            }, "GlyphRender"));
+
+    // Animations queued or playing
+    private static final AtomicInteger pendingAnimations = new AtomicInteger();
+
+    /** Runs animation work on the render thread. */
+    public static Future<?> submit(Runnable runnable) {
+        return renderExecutor.submit(runnable);
+    }
+
+    /** Starts the render thread ahead of the first animation. */
+    public static void prime() {
+        renderExecutor.prestartCoreThread();
     }
 
-    private static boolean check(String name, boolean wait) {
-        if (DEBUG) Log.d(TAG, "Playing animation | name: " + name + " | waiting: " + Boolean.toString(wait));
+    private static final long CHECK_WAIT_MS = 2500;
+
+    private static boolean check(String name, long waitedMs) {
+        if (DEBUG) Log.d(TAG, "Playing animation | name: " + name + " | waited: " + waitedMs + " ms");
 
         if (StatusManager.isAllLedActive()) {
             if (DEBUG) Log.d(TAG, "All LEDs are active, exiting animation | name: " + name);
@@ -54,29 +79,16 @@ public final class AnimationManager {
             return false;
         }
 
-        if (StatusManager.isAnimationActive()) {
-            long start = System.currentTimeMillis();
-            if (wait) {
-                if (DEBUG) Log.d(TAG, "There is already an animation playing, wait | name: " + name);
-                while (StatusManager.isAnimationActive()) {
-                    if (System.currentTimeMillis() - start >= 2500) return false;
-                }
-            } else {
-                if (DEBUG) Log.d(TAG, "There is already an animation playing, exiting | name: " + name);
-                return false;
-            }
+        if (waitedMs >= CHECK_WAIT_MS) {
+            if (DEBUG) Log.d(TAG, "Waited too long for the previous animation, exiting | name: " + name);
+            return false;
         }
 
         return true;
     }
 
-    private static boolean checkInterruption(String name) {
-        if (StatusManager.isAllLedActive()
-                || (name != "call" && StatusManager.isCallLedEnabled())
-                || (name == "call" && !StatusManager.isCallLedEnabled())) {
-            return true;
-        }
-        return false;
+    private static boolean checkInterruption() {
+        return StatusManager.isAllLedActive() || StatusManager.isCallLedEnabled();
     }
 
     public static void playCsv(String name) {
@@ -84,378 +96,514 @@ public final class AnimationManager {
     }
 
     public static void playCsv(String name, boolean wait) {
-        submit(() -> {
-            if (!check(name, wait))
-                    return;
-
-            StatusManager.setAnimationActive(true);
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    ResourceUtils.getAnimation(name)))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (checkInterruption("csv")) throw new InterruptedException();
-                    line = line.replace(" ", "");
-                    line = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
-                    String[] pattern = line.split(",");
-                    if (ArrayUtils.contains(Constants.getSupportedAnimationPatternLengths(), pattern.length)) {
-                        updateLedFrame(pattern);
-                    } else {
-                        if (DEBUG) Log.d(TAG, "Animation line length mismatch | name: " + name + " | line: " + line);
-                        throw new InterruptedException();
-                    }
-                    Thread.sleep(16, 666000);
-                }
-            } catch (Exception e) {
-                if (DEBUG) Log.d(TAG, "Exception while playing animation | name: " + name + " | exception: " + e);
-            } finally {
-                updateLedFrame(new float[5]);
-                StatusManager.setAnimationActive(false);
-                if (DEBUG) Log.d(TAG, "Done playing animation | name: " + name);
-            }
-        });
+        playAnimation(name, name, wait, AnimationLoader::getAnimation);
     }
 
-    public static void playCharging(int batteryLevel, boolean wait) {
-        if (!check("charging", wait))
-            return;
+    public static void playNotification(String name) {
+        playAnimation("notification", name, false, AnimationLoader::getNotificationAnimation);
+    }
 
-        StatusManager.setAnimationActive(true);
-        StatusManager.setChargingAnimationActive(true);
+    private interface AnimationSource {
+        GlyphAnimation load(String name) throws IOException;
+    }
 
-        int[] batteryArray = StatusManager.getBatteryArray();
-        int amount = (int) Math.floor((batteryLevel / 100D) * batteryArray.length);
-        int last = StatusManager.getChargingLedLast();
-        int next = amount - 1;
+    private static void playAnimation(String feature, String name, boolean wait,
+            AnimationSource source) {
+        // Only a waiting request queues behind the animation that is playing
+        if (!wait && pendingAnimations.get() > 0) {
+            if (DEBUG) Log.d(TAG, "There is already an animation playing, exiting | name: " + name);
+            return;
+        }
 
+        // Held from the request, long enough for the render thread to get to it
+        WakeLockManager.Token wakeLock = WakeLockManager.acquire(feature, wait ? CHECK_WAIT_MS : 0);
+        long requested = SystemClock.uptimeMillis();
+        pendingAnimations.incrementAndGet();
         try {
-            if (last <= next) {
-                for (int i = last; i <= next; i++) {
-                    if (checkInterruption("charging")) throw new InterruptedException();
-                    StatusManager.setChargingLedLast(i);
-                    batteryArray[i] = Constants.MAX_PATTERN_BRIGHTNESS;
-                    updateLedFrame(batteryArray);
-                    Thread.sleep(23);
-                }
-            } else if (last > next) {
-                for (int i = last; i > next; i--) {
-                    if (checkInterruption("charging")) throw new InterruptedException();
-                    StatusManager.setChargingLedLast(i);
-                    batteryArray[i] = 0;
-                    updateLedFrame(batteryArray);
-                    Thread.sleep(23);
-                }
-            }
-        } catch (InterruptedException e) {
-            if (DEBUG) Log.d(TAG, "Exception while playing animation, interrupted | name: charging");
-            if (!StatusManager.isAllLedActive()) {
-                StatusManager.setChargingLedLast(0);
-                batteryArray = new int[ResourceUtils.getInteger("glyph_settings_battery_levels_num")];
-                updateLedFrame(batteryArray);
-            }
-        } finally {
-            StatusManager.setAnimationActive(false);
-            StatusManager.setBatteryArray(batteryArray);
-            if (DEBUG) Log.d(TAG, "Done playing animation | name: charging");
+            submit(() -> render(name, wakeLock, requested, source));
+        } catch (RejectedExecutionException e) {
+            if (DEBUG) Log.d(TAG, "Too many animations queued, exiting | name: " + name);
+            pendingAnimations.decrementAndGet();
+            WakeLockManager.release(wakeLock);
         }
     }
 
-    public static void dismissCharging() {
-        int[] emptyArray = new int[ResourceUtils.getInteger("glyph_settings_battery_levels_num")];
-        int[] batteryArray = StatusManager.getBatteryArray();
-
-        if (Arrays.equals(emptyArray, batteryArray))
-            return;
-
-        if (!check("Dismiss charging", false))
+    private static void render(String name, WakeLockManager.Token wakeLock, long requested,
+            AnimationSource source) {
+        if (!check(name, SystemClock.uptimeMillis() - requested)) {
+            pendingAnimations.decrementAndGet();
+            WakeLockManager.release(wakeLock);
             return;
+        }
 
         StatusManager.setAnimationActive(true);
 
         try {
-            if (checkInterruption("Dismiss charging")) throw new InterruptedException();
-            for (int i = batteryArray.length - 1; i >= 0; i--) {
-                if (checkInterruption("Dismiss charging")) throw new InterruptedException();
-                if (batteryArray[i] != 0) {
-                    StatusManager.setChargingLedLast(i);
-                    batteryArray[i] = 0;
-                    updateLedFrame(batteryArray);
-                    Thread.sleep(23);
+            GlyphAnimation animation = source.load(name);
+            WakeLockManager.extend(wakeLock, animation.getDurationMs());
+            // Frames are picked by elapsed time, at a lowered frame rate some are skipped
+            long start = SystemClock.elapsedRealtimeNanos();
+            int lastFrame = -1;
+            while (true) {
+                if (checkInterruption()) throw new InterruptedException();
+                long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+                int frame = (int) (elapsed / GlyphAnimation.FRAME_DURATION_NANOS);
+                if (frame >= animation.getFrameCount()) break;
+                if (frame != lastFrame) {
+                    Compositor.setLayer(Compositor.LAYER_NOTIFICATION, animation.getFrame(frame));
+                    lastFrame = frame;
                 }
+                long duration = RenderClock.getFrameDurationNanos();
+                long sleep = duration - elapsed % duration;
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
             }
-        } catch (InterruptedException e) {
-            if (DEBUG) Log.d(TAG, "Exception while playing animation, interrupted | name: Dismiss charging");
-            if (!StatusManager.isAllLedActive())
-                updateLedFrame(new int[batteryArray.length]);
+        } catch (Exception e) {
+            if (DEBUG) Log.d(TAG, "Exception while playing animation | name: " + name + " | exception: " + e);
         } finally {
-            StatusManager.setChargingLedLast(0);
-            StatusManager.setChargingAnimationActive(false);
+            Compositor.clearLayer(Compositor.LAYER_NOTIFICATION);
             StatusManager.setAnimationActive(false);
-            if (DEBUG) Log.d(TAG, "Done playing animation | name: Dismiss charging");
+            pendingAnimations.decrementAndGet();
+            WakeLockManager.release(wakeLock);
+            if (DEBUG) Log.d(TAG, "Done playing animation | name: " + name);
         }
     }
 
-    public static void playVolume(int volumeLevel, boolean wait) {
-        if (!check("volume", wait))
-            return;
+    // One LED every 23 ms, like the stepped meters
+    private static final float METER_LEVELS_PER_SECOND = 1000f / 23f;
+
+    /**
+     * Charging or volume meter, rendered on the RenderClock into its own layer.
+     * Playing retargets the meter from wherever it is, dismissing moves it back
+     * down to zero. Meters are drawn on their LEDs of the device profile, or as
+     * raw strip frames if the profile has none.
+     */
+    private static final class Meter implements RenderClock.FrameCallback {
+        private final String mName;
+        private final int mLayer;
+        private final MeterTween mTween;
+        private final float[] mLevels;
+        private final int[] mLeds;
+        private final float[] mFrame;
+
+        // Only accessed on the clock thread
+        private boolean mRunning = false;
+        private boolean mDismissing = false;
+
+        Meter(String name, int layer, int levels, int[] leds) {
+            mName = name;
+            mLayer = layer;
+            mTween = new MeterTween(levels, METER_LEVELS_PER_SECOND);
+            mLevels = new float[levels];
+            mLeds = leds.length == levels ? leds : null;
+            mFrame = mLeds != null ? new float[DeviceProfile.get().getLedCount()] : mLevels;
+        }
 
-        StatusManager.setAnimationActive(true);
-        StatusManager.setVolumeAnimationActive(true);
+        void play(float level) {
+            RenderClock.post(() -> {
+                if (!mRunning) {
+                    if (StatusManager.isCallLedEnabled()) {
+                        if (DEBUG) Log.d(TAG, "Call animation is currently active, exiting animation | name: " + mName);
+                        return;
+                    }
+                    mRunning = true;
+                    setActive(true);
+                }
+                mDismissing = false;
+                mTween.setTarget(level / 100f * mTween.getLevels());
+                RenderClock.addFrameCallback(this);
+            });
+        }
+
+        void dismiss() {
+            RenderClock.post(() -> {
+                if (!mRunning) return;
+                if (DEBUG) Log.d(TAG, "Dismissing animation | name: " + mName);
+                mDismissing = true;
+                mTween.setTarget(0);
+                RenderClock.addFrameCallback(this);
+            });
+        }
 
-        int[] volumeArray = StatusManager.getVolumeArray();
-        int amount = (int) Math.round((volumeLevel / 100D) * volumeArray.length);
-        int last = StatusManager.getVolumeLedLast();
-        int next = amount - 1;
+        @Override
+        public boolean doFrame(long frameTimeNanos) {
+            if (!mRunning) return false;
 
-        try {
-            if (last <= next) {
-                for (int i = last; i <= next; i++) {
-                    if (checkInterruption("volume")) throw new InterruptedException();
-                    StatusManager.setVolumeLedLast(i);
-                    volumeArray[i] = Constants.MAX_PATTERN_BRIGHTNESS;
-                    updateLedFrame(volumeArray);
-                    Thread.sleep(23);
-                }
-            } else if (last > next) {
-                for (int i = last; i > next; i--) {
-                    if (checkInterruption("volume")) throw new InterruptedException();
-                    StatusManager.setVolumeLedLast(i);
-                    volumeArray[i] = 0;
-                    updateLedFrame(volumeArray);
-                    Thread.sleep(23);
+            // The call animation is the only one the meters give way to
+            if (StatusManager.isCallLedEnabled()) {
+                if (DEBUG) Log.d(TAG, "Exception while playing animation, interrupted | name: " + mName);
+                mTween.reset();
+                finish();
+                return false;
+            }
+
+            boolean moving = mTween.step(frameTimeNanos);
+            mTween.fill(mLevels, Constants.MAX_PATTERN_BRIGHTNESS);
+            if (mLeds != null) {
+                for (int i = 0; i < mLeds.length; i++) {
+                    mFrame[mLeds[i]] = mLevels[i];
                 }
             }
-        } catch (InterruptedException e) {
-            if (DEBUG) Log.d(TAG, "Exception while playing animation, interrupted | name: volume");
-            if (!StatusManager.isAllLedActive()) {
-                StatusManager.setVolumeLedLast(0);
-                volumeArray = new int[ResourceUtils.getInteger("glyph_settings_volume_levels_num")];
-                updateLedFrame(volumeArray);
+            Compositor.setLayer(mLayer, mFrame);
+            if (moving) return true;
+
+            if (mDismissing) finish();
+            if (DEBUG) Log.d(TAG, "Done playing animation | name: " + mName);
+            return false;
+        }
+
+        private void finish() {
+            mRunning = false;
+            mDismissing = false;
+            Compositor.clearLayer(mLayer);
+            setActive(false);
+        }
+
+        private void setActive(boolean active) {
+            if ("charging".equals(mName)) {
+                StatusManager.setChargingAnimationActive(active);
+            } else {
+                StatusManager.setVolumeAnimationActive(active);
             }
-        } finally {
-            StatusManager.setAnimationActive(false);
-            StatusManager.setVolumeArray(volumeArray);
-            if (DEBUG) Log.d(TAG, "Done playing animation | name: volume");
         }
     }
 
+    private static final Meter chargingMeter = new Meter("charging", Compositor.LAYER_CHARGING,
+            DeviceProfile.get().getBatteryLevels(), DeviceProfile.get().getBatteryLeds());
+    private static final Meter volumeMeter = new Meter("volume", Compositor.LAYER_VOLUME,
+            DeviceProfile.get().getVolumeLevels(), DeviceProfile.get().getVolumeLeds());
+
+    public static void playCharging(int batteryLevel) {
+        chargingMeter.play(batteryLevel);
+    }
+
+    public static void dismissCharging() {
+        chargingMeter.dismiss();
+    }
+
+    public static void playVolume(int volumeLevel) {
+        volumeMeter.play(volumeLevel);
+    }
+
     public static void dismissVolume() {
-        int[] emptyArray = new int[ResourceUtils.getInteger("glyph_settings_volume_levels_num")];
-        int[] volumeArray = StatusManager.getVolumeArray();
+        volumeMeter.dismiss();
+    }
 
-        if (Arrays.equals(emptyArray, volumeArray))
-            return;
+    /**
+     * Looping call animation, rendered on the RenderClock from frames loaded
+     * once. The frame shown is derived from the time since the loop started,
+     * so the loop never drifts and its seam costs no more than any other frame.
+     * The last frames can be crossfaded into the first one. While the torch is
+     * on the loop is paused, and resumes at the frame it was paused at.
+     *
+     * Once the start of the ringtone is estimated, the loop is aligned to where
+     * the ringtone should be from that start and its duration, at the start,
+     * after a pause and at every seam. This models the ringtone, it doesn't
+     * observe it: an error in the estimated start or in the duration from the
+     * file's metadata is never corrected.
+     */
+    private static final class CallLoop implements RenderClock.FrameCallback {
+        // Only accessed on the clock thread
+        private GlyphAnimation mAnimation;
+        private int mCrossfadeFrames;
+        private int[] mFrame;
+        private long mStartNanos = -1;
+        private long mPosition = 0;
+        private long mLoop = -1;
+        private long mSyncAnchorNanos = -1;
+        private long mSyncPeriodNanos = 0;
+        private WakeLockManager.Token mWakeLock;
+
+        void play(GlyphAnimation animation) {
+            RenderClock.post(() -> {
+                if (mAnimation == animation) {
+                    if (DEBUG) Log.d(TAG, "Call animation is currently active, exiting animation");
+                    return;
+                }
+                // A new animation for the same call keeps following the ringtone
+                if (mAnimation == null) {
+                    mSyncAnchorNanos = -1;
+                    mSyncPeriodNanos = 0;
+                }
+                mAnimation = animation;
+                mCrossfadeFrames = Math.min(animation.getFrameCount() / 2,
+                        ResourceUtils.getInteger("glyph_settings_call_crossfade_frames"));
+                mFrame = new int[animation.getPatternLength()];
+                mStartNanos = -1;
+                mPosition = 0;
+                holdWakeLock(animation.getDurationMs());
+                RenderClock.addFrameCallback(this);
+            });
+        }
 
-        if (!check("Dismiss volume", false))
-            return;
+        void sync(long anchorNanos, long periodNanos) {
+            RenderClock.post(() -> {
+                if (mAnimation == null) return;
+                mSyncAnchorNanos = anchorNanos;
+                mSyncPeriodNanos = periodNanos;
+                // Aligned on the next frame rather than the next seam
+                mLoop = -1;
+            });
+        }
 
-        StatusManager.setAnimationActive(true);
+        void resume() {
+            RenderClock.post(() -> {
+                if (mAnimation == null) return;
+                if (DEBUG) Log.d(TAG, "Resuming call animation | frame: " + mPosition);
+                holdWakeLock(mAnimation.getDurationMs());
+                RenderClock.addFrameCallback(this);
+            });
+        }
 
-        try {
-            if (checkInterruption("Dismiss volume")) throw new InterruptedException();
-            for (int i = volumeArray.length - 1; i >= 0; i--) {
-                if (volumeArray[i] != 0) {
-                    if (checkInterruption("Dismiss volume")) throw new InterruptedException();
-                    StatusManager.setVolumeLedLast(i);
-                    volumeArray[i] = 0;
-                    updateLedFrame(volumeArray);
-                    Thread.sleep(23);
+        void stop() {
+            RenderClock.post(() -> {
+                mAnimation = null;
+                releaseWakeLock();
+                RenderClock.removeFrameCallback(this);
+                Compositor.clearLayer(Compositor.LAYER_NOTIFICATION);
+                StatusManager.setCallLedActive(false);
+            });
+        }
+
+        @Override
+        public boolean doFrame(long frameTimeNanos) {
+            if (mAnimation == null) return false;
+
+            if (StatusManager.isAllLedActive()) {
+                if (mStartNanos >= 0) {
+                    mPosition = (frameTimeNanos - mStartNanos) / GlyphAnimation.FRAME_DURATION_NANOS;
+                    mStartNanos = -1;
                 }
+                if (DEBUG) Log.d(TAG, "All LED active, pause playing animation | frame: " + mPosition);
+                releaseWakeLock();
+                return false;
             }
-        } catch (InterruptedException e) {
-            if (DEBUG) Log.d(TAG, "Exception while playing animation, interrupted | name: Dismiss volume");
-            if (!StatusManager.isAllLedActive())
-                updateLedFrame(new int[volumeArray.length]);
-        } finally {
-            StatusManager.setVolumeLedLast(0);
-            StatusManager.setVolumeAnimationActive(false);
-            StatusManager.setAnimationActive(false);
-            if (DEBUG) Log.d(TAG, "Done playing animation | name: Dismiss volume");
+
+            // Give a notification animation a frame to see the call and stop
+            if (mStartNanos < 0 && StatusManager.isAnimationActive()) return true;
+
+            if (mStartNanos < 0) {
+                mStartNanos = frameTimeNanos - mPosition * GlyphAnimation.FRAME_DURATION_NANOS;
+                mLoop = -1;
+                StatusManager.setCallLedActive(true);
+            }
+
+            int frameCount = mAnimation.getFrameCount();
+            long durationNanos = frameCount * GlyphAnimation.FRAME_DURATION_NANOS;
+            long loop = (frameTimeNanos - mStartNanos) / durationNanos;
+            if (loop != mLoop) {
+                if (mSyncAnchorNanos >= 0) align(frameTimeNanos, durationNanos);
+                mLoop = (frameTimeNanos - mStartNanos) / durationNanos;
+                // Awake until the end of this loop, the next seam extends it again
+                long remainingNanos = durationNanos
+                        - Math.floorMod(frameTimeNanos - mStartNanos, durationNanos);
+                holdWakeLock(remainingNanos / 1_000_000L);
+            }
+
+            int index = (int) ((frameTimeNanos - mStartNanos)
+                    / GlyphAnimation.FRAME_DURATION_NANOS % frameCount);
+            int fadeStart = frameCount - mCrossfadeFrames;
+            if (index < fadeStart) {
+                Compositor.setLayer(Compositor.LAYER_NOTIFICATION, mAnimation.getFrame(index));
+                return true;
+            }
+
+            float t = (index - fadeStart + 1f) / (mCrossfadeFrames + 1f);
+            int[] from = mAnimation.getFrame(index);
+            int[] to = mAnimation.getFrame(0);
+            for (int i = 0; i < mFrame.length; i++) {
+                mFrame[i] = Math.round(from[i] + (to[i] - from[i]) * t);
+            }
+            Compositor.setLayer(Compositor.LAYER_NOTIFICATION, mFrame);
+            return true;
+        }
+
+        private void holdWakeLock(long durationMs) {
+            if (mWakeLock == null) {
+                mWakeLock = WakeLockManager.acquire("call", durationMs);
+            } else {
+                WakeLockManager.extend(mWakeLock, durationMs);
+            }
+        }
+
+        private void releaseWakeLock() {
+            WakeLockManager.release(mWakeLock);
+            mWakeLock = null;
+        }
+
+        /** Moves the loop to the position matching the estimated position of the ringtone. */
+        private void align(long frameTimeNanos, long durationNanos) {
+            long ringtonePosition = frameTimeNanos - mSyncAnchorNanos;
+            if (mSyncPeriodNanos > 0)
+                ringtonePosition = Math.floorMod(ringtonePosition, mSyncPeriodNanos);
+            long target = Math.floorMod(ringtonePosition, durationNanos);
+
+            // Shortest way around the loop, a late seam moves forward
+            long error = Math.floorMod(frameTimeNanos - mStartNanos, durationNanos) - target;
+            if (error > durationNanos / 2) {
+                error -= durationNanos;
+            } else if (error < -durationNanos / 2) {
+                error += durationNanos;
+            }
+            if (Math.abs(error) < GlyphAnimation.FRAME_DURATION_NANOS) return;
+
+            mStartNanos += error;
+            if (DEBUG) Log.d(TAG, "Aligned call animation to ringtone | error: "
+                    + error / 1_000_000f + " ms");
         }
     }
 
+    private static final CallLoop callLoop = new CallLoop();
+
     public static void playCall(String name) {
+        if (DEBUG) Log.d(TAG, "Playing animation | name: call: " + name);
         StatusManager.setCallLedEnabled(true);
 
-        if (!check("call: " + name, true))
-            return;
-
-        StatusManager.setCallLedActive(true);
-
-        while (StatusManager.isCallLedEnabled()) {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    ResourceUtils.getCallAnimation(name)))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (checkInterruption("call")) throw new InterruptedException();
-                    line = line.replace(" ", "");
-                    line = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
-                    String[] pattern = line.split(",");
-                    if (ArrayUtils.contains(Constants.getSupportedAnimationPatternLengths(), pattern.length)) {
-                        updateLedFrame(pattern);
-                    } else {
-                        if (DEBUG) Log.d(TAG, "Animation line length mismatch | name: " + name + " | line: " + line);
-                        throw new InterruptedException();
-                    }
-                    Thread.sleep(16, 666000);
-                }
-            } catch (Exception e) {
-                if (DEBUG) Log.d(TAG, "Exception while playing animation | name: " + name + " | exception: " + e);
-            } finally {
-                if (StatusManager.isAllLedActive()) {
-                    if (DEBUG) Log.d(TAG, "All LED active, pause playing animation | name: " + name);
-                    while (StatusManager.isAllLedActive()) {}
-                }
-            }
+        try {
+            callLoop.play(AnimationLoader.getCallAnimation(name));
+        } catch (IOException e) {
+            if (DEBUG) Log.d(TAG, "Exception while playing animation | name: " + name + " | exception: " + e);
         }
     }
 
+    /**
+     * Aligns the call animation to the ringtone, estimated to start playing out
+     * at anchorNanos on the elapsed realtime clock and to loop every
+     * periodNanos, or 0 if its duration is unknown.
+     */
+    public static void syncCall(long anchorNanos, long periodNanos) {
+        callLoop.sync(anchorNanos, periodNanos);
+    }
+
+    /** Resumes the call animation where it was paused, after the torch is turned off. */
+    public static void resumeCall() {
+        callLoop.resume();
+    }
+
     public static void stopCall() {
         if (DEBUG) Log.d(TAG, "Disabling Call Animation");
         StatusManager.setCallLedEnabled(false);
-        updateLedFrame(new float[5]);
-        StatusManager.setCallLedActive(false);
+        callLoop.stop();
         if (DEBUG) Log.d(TAG, "Done playing Call Animation");
     }
 
-    public static void playEssential() {
-        if (DEBUG) Log.d(TAG, "Playing Essential Animation");
-        int led = ResourceUtils.getInteger("glyph_settings_notifs_essential_led");
-        if (!StatusManager.isEssentialLedActive()) {
-            submit(() -> {
-                if (!check("essential", true))
-                    return;
+    /**
+     * Fade in of the essential LED, rendered on the RenderClock. The step shown
+     * is picked by the time since the fade started, so it keeps its length at
+     * any frame rate.
+     */
+    private static final class EssentialFade implements RenderClock.FrameCallback {
+        private static final int[] STEPS = {12, 24, 36, 48};
+
+        // Only accessed on the clock thread
+        private boolean mRunning = false;
+        private long mStartNanos = -1;
+
+        void play() {
+            RenderClock.post(() -> {
+                mRunning = true;
+                mStartNanos = -1;
+                RenderClock.addFrameCallback(this);
+            });
+        }
 
-                StatusManager.setAnimationActive(true);
+        /** Shows the LED at its full level, unless it is still fading in. */
+        void show() {
+            RenderClock.post(() -> {
+                if (mRunning || !StatusManager.isEssentialLedActive()) return;
+                Compositor.setLed(Compositor.LAYER_ESSENTIAL, DeviceProfile.get().getEssentialLed(),
+                        Constants.ESSENTIAL_BRIGHTNESS);
+            });
+        }
 
-                try {
-                    if (checkInterruption("essential")) throw new InterruptedException();
-                    int[] steps = {12, 24, 36, 48, 60};
-                    for (int i : steps) {
-                        if (checkInterruption("essential")) throw new InterruptedException();
-                        updateLedSingle(led, Constants.MAX_PATTERN_BRIGHTNESS / 100 * i);
-                        Thread.sleep(16, 666000);
-                    }
-                } catch (InterruptedException e) {}
-                StatusManager.setAnimationActive(false);
-                StatusManager.setEssentialLedActive(true);
-                if (DEBUG) Log.d(TAG, "Done playing animation | name: essential");
+        void stop() {
+            RenderClock.post(() -> {
+                mRunning = false;
+                RenderClock.removeFrameCallback(this);
+                Compositor.clearLayer(Compositor.LAYER_ESSENTIAL);
             });
+        }
+
+        @Override
+        public boolean doFrame(long frameTimeNanos) {
+            if (!mRunning) return false;
+            if (mStartNanos < 0) mStartNanos = frameTimeNanos;
+
+            int led = DeviceProfile.get().getEssentialLed();
+            int step = (int) ((frameTimeNanos - mStartNanos) / GlyphAnimation.FRAME_DURATION_NANOS);
+            if (step < STEPS.length) {
+                Compositor.setLed(Compositor.LAYER_ESSENTIAL, led,
+                        Constants.getPatternBrightness(STEPS[step]));
+                return true;
+            }
+
+            Compositor.setLed(Compositor.LAYER_ESSENTIAL, led, Constants.ESSENTIAL_BRIGHTNESS);
+            mRunning = false;
+            if (DEBUG) Log.d(TAG, "Done playing animation | name: essential");
+            return false;
+        }
+    }
+
+    private static final EssentialFade essentialFade = new EssentialFade();
+
+    public static void playEssential() {
+        if (DEBUG) Log.d(TAG, "Playing Essential Animation");
+        if (!StatusManager.isEssentialLedActive()) {
+            StatusManager.setEssentialLedActive(true);
+            essentialFade.play();
         } else {
-            updateLedSingle(led, Constants.MAX_PATTERN_BRIGHTNESS / 100 * 60);
-            return;
+            essentialFade.show();
         }
     }
 
+    /** Redraws the LEDs with the current brightness. */
+    public static void refresh() {
+        Compositor.invalidate();
+    }
+
     public static void stopEssential() {
         if (DEBUG) Log.d(TAG, "Disabling Essential Animation");
         StatusManager.setEssentialLedActive(false);
-        if (!StatusManager.isAnimationActive() && !StatusManager.isAllLedActive()) {
-            int led = ResourceUtils.getInteger("glyph_settings_notifs_essential_led");
-            updateLedSingle(led, 0);
-        }
+        essentialFade.stop();
     }
 
+    private static final int[] musicPattern = new int[5];
+
     public static void playMusic(String name) {
-        if (StatusManager.isAnimationActive() || StatusManager.isChargingAnimationActive() 
-            || StatusManager.isVolumeAnimationActive() || StatusManager.isCallLedEnabled())
+        if (StatusManager.isCallLedEnabled() || !RenderGovernor.isMusicAllowed())
             return;
 
-        float maxPatternBrightness = (float) Constants.MAX_PATTERN_BRIGHTNESS;
-        float[] pattern = new float[5];
-
+        int zone;
         switch (name) {
             case "low":
-                pattern[4] = maxPatternBrightness;
+                zone = 4;
                 break;
             case "mid_low":
-                pattern[3] = maxPatternBrightness;
+                zone = 3;
                 break;
             case "mid":
-                pattern[2] = maxPatternBrightness;
+                zone = 2;
                 break;
             case "mid_high":
-                pattern[0] = maxPatternBrightness;
+                zone = 0;
                 break;
             case "high":
-                pattern[1] = maxPatternBrightness;
+                zone = 1;
                 break;
             default:
                 if (DEBUG) Log.d(TAG, "Name doesn't match any zone, returning | name: " + name);
                 return;
         }
 
-        try {
-            updateLedFrame(pattern);
-            Thread.sleep(106);
-        } catch (Exception e) {
-            if (DEBUG) Log.d(TAG, "Exception while playing animation | name: music: " + name + " | exception: " + e);
-        } finally {
-            updateLedFrame(new float[5]);
-            if (DEBUG) Log.d(TAG, "Done playing animation | name: " + name);
-        }
-    }
-
-    private static void updateLedFrame(String[] pattern) {
-        updateLedFrame(Arrays.stream(pattern)
-                .mapToInt(Integer::parseInt)
-                .toArray());
-    }
-
-    private static void updateLedFrame(int[] pattern) {
-        float[] floatPattern = new float[pattern.length];
-        for (int i = 0; i < pattern.length; i++) {
-            floatPattern[i] = (float) pattern[i];
-        }
-        updateLedFrame(floatPattern);
-    }
-
-    private static void updateLedFrame(float[] pattern) {
-        //if (DEBUG) Log.d(TAG, "Updating pattern: " + pattern);
-        float maxPatternBrightness = (float) Constants.MAX_PATTERN_BRIGHTNESS;
-        float currentBrightness = (float) Constants.getBrightness();
-        int essentialLed = ResourceUtils.getInteger("glyph_settings_notifs_essential_led");
-
-        if (StatusManager.isEssentialLedActive()) {
-            if (pattern.length == 5) { // Phone (1) pattern
-                if (pattern[1] < (maxPatternBrightness / 100 * 60)) {
-                    pattern[1] = maxPatternBrightness / 100 * 60;
-                }
-            } else if (pattern.length == 33) { // Phone (2) pattern
-                if (pattern[2] < (maxPatternBrightness / 100 * 60)) {
-                    pattern[2] = maxPatternBrightness / 100 * 60;
-                }
-            }
-        }
-
-        for (int i = 0; i < pattern.length; i++) {
-            pattern[i] = pattern[i] / maxPatternBrightness * currentBrightness;
+        // Reused for every beat, the compositor copies it
+        synchronized (musicPattern) {
+            Arrays.fill(musicPattern, 0);
+            musicPattern[zone] = Constants.MAX_PATTERN_BRIGHTNESS;
+            Compositor.setLayer(Compositor.LAYER_MUSIC, musicPattern);
         }
-        FileUtils.writeFrameLed(pattern);
     }
 
-    private static void updateLedSingle(int led, String brightness) {
-        updateLedSingle(led, Float.parseFloat(brightness));
-    }
-
-    private static void updateLedSingle(int led, int brightness) {
-        updateLedSingle(led, (float) brightness);
-    }
-
-    private static void updateLedSingle(int led, float brightness) {
-        //if (DEBUG) Log.d(TAG, "Updating led | led: " + led + " | brightness: " + brightness);
-        float maxPatternBrightness = (float) Constants.MAX_PATTERN_BRIGHTNESS;
-        float currentBrightness = (float) Constants.getBrightness();
-        int essentialLed = ResourceUtils.getInteger("glyph_settings_notifs_essential_led");
-
-        if (StatusManager.isEssentialLedActive()
-                && led == essentialLed
-                && brightness < (maxPatternBrightness / 100 * 60)) {
-            brightness = maxPatternBrightness / 100 * 60;
-        }
-
-        brightness = brightness / maxPatternBrightness * currentBrightness;
-
-        FileUtils.writeSingleLed(led, brightness);
+    public static void stopMusic() {
+        Compositor.clearLayer(Compositor.LAYER_MUSIC);
+        if (DEBUG) Log.d(TAG, "Done playing animation | name: music");
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import android.util.Log;
+
+import co.aospa.glyph.Constants.Constants;
+
+/**
+ * Moves the Glyph brightness smoothly on the RenderClock. Every step updates
+ * the brightness used by the next frame of whatever is playing, nothing is
+ * restarted, and a static essential LED is refreshed in place.
+ */
+public final class BrightnessManager {
+
+    private static final String TAG = "GlyphBrightnessManager";
+    private static final boolean DEBUG = true;
+
+    private static final long RAMP_DURATION_NANOS = 500_000_000L;
+
+    // Only accessed on the clock thread
+    private static float start;
+    private static float target;
+    private static long rampStart;
+    private static boolean ramping = false;
+
+    public static void rampTo(int brightness) {
+        RenderClock.post(() -> {
+            start = Constants.getBrightness();
+            target = brightness;
+            rampStart = -1;
+            if (DEBUG) Log.d(TAG, "Ramping brightness | from: " + start + " | to: " + target);
+            if (!ramping) {
+                ramping = true;
+                RenderClock.addFrameCallback(ramp);
+            }
+        });
+    }
+
+    private static final RenderClock.FrameCallback ramp = frameTimeNanos -> {
+        if (rampStart < 0) rampStart = frameTimeNanos;
+        float progress = Math.min(1f, (frameTimeNanos - rampStart) / (float) RAMP_DURATION_NANOS);
+        int brightness = Math.round(start + (target - start) * progress);
+        if (brightness != Constants.getBrightness()) {
+            Constants.setBrightness(brightness);
+            AnimationManager.refresh();
+        }
+        if (progress < 1f) return true;
+        ramping = false;
+        return false;
+    };
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Maps every pattern value to the value written to the LEDs, for the current
+ * brightness and gamma curve, capped by the RenderGovernor. The gamma curve is
+ * built once in fixed point, the brightness is applied with one multiply per
+ * LED, so a brightness ramp doesn't rebuild anything.
+ */
+public final class BrightnessTable {
+
+    private static final int SIZE = Constants.MAX_PATTERN_BRIGHTNESS + 1;
+    private static final int FRACTION_BITS = 16;
+    private static final int ONE = 1 << FRACTION_BITS;
+
+    private static volatile BrightnessTable current;
+    // Gamma curve from 0 to ONE, built on first use
+    private static volatile int[] curve;
+
+    private final int[] mCurve;
+    private final int mBrightness;
+
+    private BrightnessTable(int[] curve, int brightness) {
+        mCurve = curve;
+        mBrightness = brightness;
+    }
+
+    private static synchronized int[] getCurve() {
+        if (curve != null) return curve;
+        float gamma = ResourceUtils.getInteger("glyph_settings_brightness_gamma_percent") / 100f;
+        int[] values = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            double value = (double) i / Constants.MAX_PATTERN_BRIGHTNESS;
+            if (gamma != 1f) value = Math.pow(value, gamma);
+            values[i] = (int) Math.round(value * ONE);
+        }
+        curve = values;
+        return values;
+    }
+
+    /** Returns the table of the current brightness. */
+    public static BrightnessTable get() {
+        BrightnessTable table = current;
+        int brightness = Math.min(Constants.getBrightness(), RenderGovernor.getBrightnessCap());
+        if (table == null || table.mBrightness != brightness) {
+            int[] values = curve;
+            table = new BrightnessTable(values != null ? values : getCurve(), brightness);
+            current = table;
+        }
+        return table;
+    }
+
+    /** Scales a pattern value, clamped to the pattern range. */
+    public int scale(int value) {
+        if (value <= 0) return 0;
+        int level = mCurve[Math.min(value, SIZE - 1)];
+        return (int) (((long) level * mBrightness + ONE / 2) >> FRACTION_BITS);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Profile.DeviceProfile;
+import co.aospa.glyph.Utils.FileUtils;
+
+/**
+ * Framebuffer of the Glyph LEDs. Every feature draws into its own layer and
+ * the layers are blended bottom to top into a single native frame, written
+ * at most once per RenderClock frame and only if it changed.
+ *
+ * Layers hold pattern values and are scaled through the BrightnessTable
+ * before blending, except unscaled layers which hold values written as is.
+ * Patterns of a length the device can't map, like the raw strip frames of
+ * meters without meter LEDs, can't be blended: while such a layer is visible
+ * the topmost one of them is written on its own, unless a replacing layer
+ * covers it.
+ *
+ * The composed frame is held to the power budget of the device profile: its
+ * draw, the brightness of every LED weighted by its relative current, is
+ * scaled down as a whole when it exceeds the budget.
+ */
+public final class Compositor {
+
+    private static final String TAG = "GlyphCompositor";
+    private static final boolean DEBUG = true;
+
+    // Layers, bottom to top
+    public static final int LAYER_ESSENTIAL = 0;
+    public static final int LAYER_NOTIFICATION = 1;
+    public static final int LAYER_CHARGING = 2;
+    public static final int LAYER_VOLUME = 3;
+    public static final int LAYER_MUSIC = 4;
+    public static final int LAYER_TORCH = 5;
+    private static final int LAYER_COUNT = 6;
+
+    private static final String[] LAYER_NAMES = {
+        "essential", "notification", "charging", "volume", "music", "torch",
+    };
+
+    /** Keeps the brighter of the layer and what is below it. */
+    private static final int BLEND_MAX = 0;
+    /** Covers what is below the layer. */
+    private static final int BLEND_REPLACE = 1;
+
+    private static final class Layer {
+        final String name;
+        int blend;
+        boolean scaled = true;
+
+        boolean visible = false;
+        // Native frame, or the raw pattern if the pattern length can't be mapped
+        int[] values;
+        boolean raw = false;
+
+        // Buffers behind values, allocated once per pattern length
+        private final int[] mFrame;
+        private int[] mRawPattern;
+
+        Layer(String name, int blend, int ledCount) {
+            this.name = name;
+            this.blend = blend;
+            mFrame = new int[ledCount];
+            values = mFrame;
+        }
+
+        int[] useFrame() {
+            raw = false;
+            values = mFrame;
+            return mFrame;
+        }
+
+        int[] useRawPattern(int length) {
+            if (mRawPattern == null || mRawPattern.length != length) mRawPattern = new int[length];
+            raw = true;
+            values = mRawPattern;
+            return mRawPattern;
+        }
+    }
+
+    private static final Object lock = new Object();
+
+    // Guarded by lock
+    private static final Layer[] layers = new Layer[LAYER_COUNT];
+    private static boolean scheduled = false;
+
+    // Only accessed on the clock thread
+    private static final int[][] snapshot = new int[LAYER_COUNT][];
+    private static final int[] snapshotBlends = new int[LAYER_COUNT];
+    private static final boolean[] snapshotScaled = new boolean[LAYER_COUNT];
+    private static final boolean[] snapshotRaw = new boolean[LAYER_COUNT];
+    // Composed into one buffer while the other holds the last written frame
+    private static int[] frame;
+    private static int[] lastFrame;
+
+    private static volatile long composedFrames = 0;
+    private static volatile long writtenFrames = 0;
+    private static volatile long limitedFrames = 0;
+    private static volatile double limitedScaleSum = 0;
+    private static volatile double lowestScale = 1;
+
+    private static final RenderClock.FrameCallback compose = Compositor::compose;
+
+    static {
+        int ledCount = DeviceProfile.get().getLedCount();
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            layers[i] = new Layer(LAYER_NAMES[i], BLEND_MAX, ledCount);
+        }
+        layers[LAYER_TORCH].blend = BLEND_REPLACE;
+        layers[LAYER_TORCH].scaled = false;
+    }
+
+    /** Sets the content of a layer from a pattern of any supported length. */
+    public static void setLayer(int layer, int[] pattern) {
+        synchronized (lock) {
+            Layer target = layers[layer];
+            int[] frameMap = DeviceProfile.get().getFrameMap(pattern.length);
+            if (frameMap == null) {
+                System.arraycopy(pattern, 0, target.useRawPattern(pattern.length), 0, pattern.length);
+            } else {
+                int[] values = target.useFrame();
+                for (int i = 0; i < frameMap.length; i++) {
+                    values[i] = pattern[frameMap[i]];
+                }
+            }
+            target.visible = true;
+            schedule();
+        }
+    }
+
+    /** Sets the content of a layer from a pattern of any supported length. */
+    public static void setLayer(int layer, float[] pattern) {
+        synchronized (lock) {
+            Layer target = layers[layer];
+            int[] frameMap = DeviceProfile.get().getFrameMap(pattern.length);
+            if (frameMap == null) {
+                int[] values = target.useRawPattern(pattern.length);
+                for (int i = 0; i < pattern.length; i++) {
+                    values[i] = Math.round(pattern[i]);
+                }
+            } else {
+                int[] values = target.useFrame();
+                for (int i = 0; i < frameMap.length; i++) {
+                    values[i] = Math.round(pattern[frameMap[i]]);
+                }
+            }
+            target.visible = true;
+            schedule();
+        }
+    }
+
+    /** Sets a layer to a single lit native LED. */
+    public static void setLed(int layer, int led, int value) {
+        synchronized (lock) {
+            int[] values = layers[layer].useFrame();
+            Arrays.fill(values, 0);
+            values[led] = value;
+            layers[layer].visible = true;
+            schedule();
+        }
+    }
+
+    /** Sets a layer to all native LEDs at the same value. */
+    public static void fillLayer(int layer, int value) {
+        synchronized (lock) {
+            Arrays.fill(layers[layer].useFrame(), value);
+            layers[layer].visible = true;
+            schedule();
+        }
+    }
+
+    /** Hides a layer, uncovering what is below it. */
+    public static void clearLayer(int layer) {
+        synchronized (lock) {
+            if (!layers[layer].visible) return;
+            layers[layer].visible = false;
+            schedule();
+        }
+    }
+
+    /** Composes the frame again, after a brightness change. */
+    public static void invalidate() {
+        synchronized (lock) {
+            schedule();
+        }
+    }
+
+    private static void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        RenderClock.addFrameCallback(compose);
+    }
+
+    private static boolean compose(long frameTimeNanos) {
+        int ledCount = DeviceProfile.get().getLedCount();
+        int rawLayer = -1;
+
+        synchronized (lock) {
+            scheduled = false;
+            for (int i = 0; i < LAYER_COUNT; i++) {
+                Layer layer = layers[i];
+                if (!layer.visible) {
+                    snapshot[i] = null;
+                    continue;
+                }
+                if (snapshot[i] == null || snapshot[i].length != layer.values.length)
+                    snapshot[i] = new int[layer.values.length];
+                System.arraycopy(layer.values, 0, snapshot[i], 0, layer.values.length);
+                snapshotBlends[i] = layer.blend;
+                snapshotScaled[i] = layer.scaled;
+                snapshotRaw[i] = layer.raw;
+                if (layer.raw) {
+                    rawLayer = i;
+                } else if (layer.blend == BLEND_REPLACE) {
+                    // Fully covered, raw layers below can't show through
+                    rawLayer = -1;
+                }
+            }
+        }
+
+        BrightnessTable table = BrightnessTable.get();
+        int length = rawLayer != -1 ? snapshot[rawLayer].length : ledCount;
+        if (frame == null || frame.length != length) frame = new int[length];
+        if (rawLayer != -1) {
+            int[] values = snapshot[rawLayer];
+            boolean scaled = snapshotScaled[rawLayer];
+            for (int i = 0; i < length; i++) {
+                frame[i] = scaled ? table.scale(values[i]) : values[i];
+            }
+        } else {
+            Arrays.fill(frame, 0);
+            for (int l = 0; l < LAYER_COUNT; l++) {
+                int[] values = snapshot[l];
+                if (values == null || snapshotRaw[l]) continue;
+                boolean scaled = snapshotScaled[l];
+                boolean replace = snapshotBlends[l] == BLEND_REPLACE;
+                for (int i = 0; i < length; i++) {
+                    int value = scaled ? table.scale(values[i]) : values[i];
+                    frame[i] = replace ? value : Math.max(frame[i], value);
+                }
+            }
+        }
+
+        limit(frame);
+        composedFrames++;
+        if (Arrays.equals(frame, lastFrame)) return false;
+
+        FileUtils.writeFrameLed(frame);
+        int[] written = frame;
+        frame = lastFrame;
+        lastFrame = written;
+        writtenFrames++;
+        return false;
+    }
+
+    /** Scales a frame down to the power budget, raw frames weigh every value the same. */
+    private static void limit(int[] frame) {
+        DeviceProfile profile = DeviceProfile.get();
+        int budgetPercent = profile.getPowerBudgetPercent();
+        if (budgetPercent >= 100) return;
+
+        int[] weights = frame.length == profile.getLedCount() ? profile.getLedWeights() : null;
+        long draw = 0;
+        long totalWeight = 0;
+        for (int i = 0; i < frame.length; i++) {
+            int weight = weights != null ? weights[i] : 1;
+            draw += (long) weight * frame[i];
+            totalWeight += weight;
+        }
+        long budget = totalWeight * Constants.getMaxBrightness() * budgetPercent / 100;
+        if (draw <= budget) return;
+
+        // Rounded down, the scaled frame never exceeds the budget
+        double scale = (double) budget / draw;
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (int) (frame[i] * scale);
+        }
+        limitedFrames++;
+        limitedScaleSum += scale;
+        lowestScale = Math.min(lowestScale, scale);
+    }
+
+    public static void dump(PrintWriter pw) {
+        pw.println("Compositor:");
+        synchronized (lock) {
+            for (Layer layer : layers) {
+                pw.println("  " + layer.name + ": visible=" + layer.visible
+                        + " raw=" + layer.raw + " blend=" + layer.blend
+                        + " scaled=" + layer.scaled);
+            }
+        }
+        pw.println("  frames: composed=" + composedFrames + " written=" + writtenFrames);
+        long limited = limitedFrames;
+        pw.println("  power budget: " + DeviceProfile.get().getPowerBudgetPercent() + "%"
+                + " | limited frames: " + limited
+                + (limited > 0 ? String.format(" | average scale: %.2f | lowest scale: %.2f",
+                        limitedScaleSum / limited, lowestScale) : ""));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Manager;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+
+import co.aospa.glyph.Animation.GlyphAnimation;
+
+/**
+ * Frame clock of the Glyph renderer. Frame callbacks run on a single display
+ * priority thread, once per frame and aligned to the start of the first frame,
+ * and the clock stops ticking while no callback is registered. Work posted to
+ * the clock never sleeps, so a new request is picked up on the next frame.
+ * The frame rate can be lowered, callbacks render by elapsed time and so keep
+ * their pace at any rate.
+ */
+public final class RenderClock {
+
+    private static final String TAG = "GlyphRenderClock";
+    private static final boolean DEBUG = true;
+
+    public interface FrameCallback {
+        /** Renders a frame, returns false to be removed from the clock. */
+        boolean doFrame(long frameTimeNanos);
+    }
+
+    private static volatile long frameDurationNanos = GlyphAnimation.FRAME_DURATION_NANOS;
+
+    private static HandlerThread thread;
+    private static Handler handler;
+
+    // Only accessed on the clock thread
+    private static final ArrayList<FrameCallback> callbacks = new ArrayList<>();
+    private static boolean ticking = false;
+    private static long startUptimeMillis;
+    private static long frame;
+
+    private static final Runnable tick = RenderClock::tick;
+
+    private static synchronized Handler getHandler() {
+        if (handler == null) {
+            thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    /** Starts the clock thread ahead of the first frame. */
+    public static void prime() {
+        getHandler();
+    }
+
+    /** Runs work on the clock thread, in order with frame callbacks. */
+    public static void post(Runnable runnable) {
+        getHandler().post(runnable);
+    }
+
+    /** Sets the rate frame callbacks run at, up to the frame rate of the animations. */
+    public static void setFrameRate(int fps) {
+        long duration = Math.max(GlyphAnimation.FRAME_DURATION_NANOS, 1_000_000_000L / fps);
+        if (duration == frameDurationNanos) return;
+        frameDurationNanos = duration;
+        post(() -> {
+            // Align the following frames to the new duration
+            startUptimeMillis = SystemClock.uptimeMillis();
+            frame = 0;
+        });
+    }
+
+    public static long getFrameDurationNanos() {
+        return frameDurationNanos;
+    }
+
+    public static void addFrameCallback(FrameCallback callback) {
+        post(() -> {
+            if (!callbacks.contains(callback)) callbacks.add(callback);
+            if (ticking) return;
+            ticking = true;
+            startUptimeMillis = SystemClock.uptimeMillis();
+            frame = 0;
+            handler.post(tick);
+        });
+    }
+
+    public static void removeFrameCallback(FrameCallback callback) {
+        post(() -> callbacks.remove(callback));
+    }
+
+    private static void tick() {
+        long frameTimeNanos = SystemClock.elapsedRealtimeNanos();
+        for (int i = callbacks.size() - 1; i >= 0; i--) {
+            if (!callbacks.get(i).doFrame(frameTimeNanos)) callbacks.remove(i);
+        }
+        if (callbacks.isEmpty()) {
+            ticking = false;
+            return;
+        }
+
+        // Late frames are dropped rather than queued, the schedule never drifts
+        long now = SystemClock.uptimeMillis();
+        long duration = frameDurationNanos;
+        long current = (now - startUptimeMillis) * 1_000_000L / duration;
+        frame = Math.max(frame + 1, current + 1);
+        handler.postAtTime(tick, startUptimeMillis + frame * duration / 1_000_000L);
+    }
+}
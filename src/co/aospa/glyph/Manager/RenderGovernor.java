@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Degrades rendering while battery saver is on or the device is warm. Every
+ * entry of glyph_governor_policies applies while its condition holds, and the
+ * most restrictive values of all applying entries win: a lower frame rate,
+ * which time based animations resample to, a brightness cap and whether the
+ * music visualizer may run.
+ */
+public final class RenderGovernor {
+
+    private static final String TAG = "GlyphRenderGovernor";
+    private static final boolean DEBUG = true;
+
+    private static final int MAX_FRAME_RATE = 60;
+
+    private static final String CONDITION_POWER_SAVE = "power_save";
+    private static final String CONDITION_THERMAL_PREFIX = "thermal_";
+    private static final String[] THERMAL_STATUSES = {
+        "none", "light", "moderate", "severe", "critical", "emergency", "shutdown",
+    };
+
+    /** One entry of the policy table: condition, frame rate, brightness percent, music. */
+    private static final class Policy {
+        final String condition;
+        final int frameRate;
+        final int brightnessPercent;
+        final boolean music;
+
+        Policy(String condition, int frameRate, int brightnessPercent, boolean music) {
+            this.condition = condition;
+            this.frameRate = frameRate;
+            this.brightnessPercent = brightnessPercent;
+            this.music = music;
+        }
+
+        @Override
+        public String toString() {
+            return condition + ": " + frameRate + " fps, " + brightnessPercent + "% brightness, music "
+                    + (music ? "on" : "off");
+        }
+    }
+
+    private static Policy[] policies;
+    private static PowerManager powerManager;
+    private static Handler handler;
+    private static Runnable onChanged;
+
+    // Only accessed on the handler thread
+    private static boolean powerSave = false;
+    private static int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+    private static int changes = 0;
+
+    private static volatile int frameRate = MAX_FRAME_RATE;
+    private static volatile int brightnessPercent = 100;
+    private static volatile boolean musicAllowed = true;
+
+    /**
+     * Starts following battery saver and thermal status on the given handler,
+     * onChanged runs there whenever the effective policy changed.
+     */
+    public static synchronized void start(Context context, Handler policyHandler, Runnable changed) {
+        if (handler != null) return;
+        if (policies == null) policies = parsePolicies(
+                ResourceUtils.getStringArray("glyph_governor_policies"));
+        powerManager = context.getSystemService(PowerManager.class);
+        handler = policyHandler;
+        onChanged = changed;
+
+        context.registerReceiver(powerSaveReceiver,
+                new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED), null, handler);
+        powerManager.addThermalStatusListener(handler::post, thermalListener);
+        handler.post(() -> {
+            powerSave = powerManager.isPowerSaveMode();
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            update();
+        });
+    }
+
+    public static synchronized void stop(Context context) {
+        if (handler == null) return;
+        context.unregisterReceiver(powerSaveReceiver);
+        powerManager.removeThermalStatusListener(thermalListener);
+        handler = null;
+        onChanged = null;
+
+        frameRate = MAX_FRAME_RATE;
+        brightnessPercent = 100;
+        musicAllowed = true;
+        RenderClock.setFrameRate(MAX_FRAME_RATE);
+        Compositor.invalidate();
+    }
+
+    /** Returns the highest brightness the LEDs may be driven at. */
+    public static int getBrightnessCap() {
+        return Constants.getMaxBrightness() * brightnessPercent / 100;
+    }
+
+    public static boolean isMusicAllowed() {
+        return musicAllowed;
+    }
+
+    private static Policy[] parsePolicies(String[] entries) {
+        Policy[] parsed = new Policy[entries.length];
+        int count = 0;
+        for (String entry : entries) {
+            String[] fields = entry.split(",");
+            try {
+                if (fields.length != 4) throw new IllegalArgumentException("expected 4 fields");
+                String condition = fields[0].trim();
+                if (!CONDITION_POWER_SAVE.equals(condition) && thermalLevel(condition) < 0)
+                    throw new IllegalArgumentException("unknown condition " + condition);
+                int rate = Integer.parseInt(fields[1].trim());
+                if (rate <= 0 || rate > MAX_FRAME_RATE)
+                    throw new IllegalArgumentException("frame rate out of range");
+                parsed[count++] = new Policy(condition, rate,
+                        Math.max(0, Math.min(100, Integer.parseInt(fields[2].trim()))),
+                        Boolean.parseBoolean(fields[3].trim()));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Ignoring invalid policy | entry: " + entry + " | error: " + e.getMessage());
+            }
+        }
+        Policy[] valid = new Policy[count];
+        System.arraycopy(parsed, 0, valid, 0, count);
+        return valid;
+    }
+
+    /** Returns the thermal status a condition applies from, or -1 if it isn't a thermal one. */
+    private static int thermalLevel(String condition) {
+        if (!condition.startsWith(CONDITION_THERMAL_PREFIX)) return -1;
+        String status = condition.substring(CONDITION_THERMAL_PREFIX.length());
+        for (int i = 0; i < THERMAL_STATUSES.length; i++) {
+            if (THERMAL_STATUSES[i].equals(status)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean applies(Policy policy) {
+        if (CONDITION_POWER_SAVE.equals(policy.condition)) return powerSave;
+        return thermalStatus >= thermalLevel(policy.condition);
+    }
+
+    private static void update() {
+        int rate = MAX_FRAME_RATE;
+        int percent = 100;
+        boolean music = true;
+        for (Policy policy : policies) {
+            if (!applies(policy)) continue;
+            rate = Math.min(rate, policy.frameRate);
+            percent = Math.min(percent, policy.brightnessPercent);
+            music &= policy.music;
+        }
+        if (rate == frameRate && percent == brightnessPercent && music == musicAllowed) return;
+
+        if (DEBUG) Log.d(TAG, "Policy changed | power save: " + powerSave
+                + " | thermal: " + THERMAL_STATUSES[Math.min(thermalStatus, THERMAL_STATUSES.length - 1)]
+                + " | fps: " + rate + " | brightness: " + percent + "% | music: " + music);
+        changes++;
+        frameRate = rate;
+        brightnessPercent = percent;
+        musicAllowed = music;
+
+        RenderClock.setFrameRate(rate);
+        Compositor.invalidate();
+        Runnable changed = onChanged;
+        if (changed != null) changed.run();
+    }
+
+    private static final BroadcastReceiver powerSaveReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            powerSave = powerManager.isPowerSaveMode();
+            update();
+        }
+    };
+
+    private static final PowerManager.OnThermalStatusChangedListener thermalListener = status -> {
+        thermalStatus = status;
+        update();
+    };
+
+    public static void dump(PrintWriter pw) {
+        pw.println("RenderGovernor:");
+        pw.println("  power save: " + powerSave + " | thermal: " + thermalStatus
+                + " | changes: " + changes);
+        pw.println("  fps: " + frameRate + " | brightness: " + brightnessPercent
+                + "% | music: " + musicAllowed);
+        if (policies == null) return;
+        for (Policy policy : policies) {
+            pw.println("  " + (applies(policy) ? "* " : "  ") + policy);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package co.aospa.glyph.Manager;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -24,11 +25,13 @@ import androidx.preference.PreferenceManager;
 
 import com.android.internal.util.ArrayUtils;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import co.aospa.glyph.Constants.Constants;
-import co.aospa.glyph.Utils.FileUtils;
+import co.aospa.glyph.Sysfs.SysfsWatcher;
 import co.aospa.glyph.Utils.ResourceUtils;
 
 public final class SettingsManager {
@@ -85,7 +88,7 @@ public final class SettingsManager {
             return 3; // Default value
         }
         int d = 3; 
-        if ("white".equals(FileUtils.readLine("/mnt/vendor/persist/color"))) {
+        if ("white".equals(SysfsWatcher.get().getString("/mnt/vendor/persist/color"))) {
             d = 2;
         }
         return PreferenceManager.getDefaultSharedPreferences(context)
@@ -138,6 +141,54 @@ public final class SettingsManager {
                         ResourceUtils.getString("glyph_settings_call_animations_default"));
     }
 
+    /** Returns the call animations of contacts, keyed by contact lookup key. */
+    public static Map<String, String> getGlyphCallContactAnimations() {
+        return getPrefixedStrings(Constants.GLYPH_CALL_CONTACT_PREFIX);
+    }
+
+    /** Returns the call animations of contact groups, keyed by group id. */
+    public static Map<String, String> getGlyphCallGroupAnimations() {
+        return getPrefixedStrings(Constants.GLYPH_CALL_GROUP_PREFIX);
+    }
+
+    /** Sets the call animation of a contact, or removes it if name is null. */
+    public static boolean setGlyphCallContactAnimation(String lookupKey, String name) {
+        return putString(Constants.GLYPH_CALL_CONTACT_PREFIX + lookupKey, name);
+    }
+
+    /** Sets the call animation of a contact group, or removes it if name is null. */
+    public static boolean setGlyphCallGroupAnimation(long groupId, String name) {
+        return putString(Constants.GLYPH_CALL_GROUP_PREFIX + groupId, name);
+    }
+
+    private static Map<String, String> getPrefixedStrings(String prefix) {
+        Map<String, String> values = new HashMap<>();
+        if (!isContextInitialized()) {
+            Log.e(TAG, "Context is not initialized");
+            return values;
+        }
+        for (Map.Entry<String, ?> entry : PreferenceManager.getDefaultSharedPreferences(context)
+                .getAll().entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof String)
+                values.put(entry.getKey().substring(prefix.length()), (String) entry.getValue());
+        }
+        return values;
+    }
+
+    private static boolean putString(String key, String value) {
+        if (!isContextInitialized()) {
+            Log.e(TAG, "Context is not initialized");
+            return false;
+        }
+        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+        if (value == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, value);
+        }
+        return editor.commit();
+    }
+
     public static boolean isGlyphMusicVisualizerEnabled() {
         if (!isContextInitialized()) {
             Log.e(TAG, "Context is not initialized");
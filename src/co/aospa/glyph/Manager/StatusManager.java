@@ -16,8 +16,6 @@
 
 package co.aospa.glyph.Manager;
 
-import co.aospa.glyph.Utils.ResourceUtils;
-
 public final class StatusManager {
 
     private static final String TAG = "GlyphStatusManager";
@@ -29,10 +27,6 @@ public final class StatusManager {
     private static boolean volumeAnimationActive = false;
     private static boolean callLedActive = false;
     private static boolean essentialLedActive = false;
-    private static int chargingLedLast = 0;
-    private static int[] batteryArray = new int[ResourceUtils.getInteger("glyph_settings_battery_levels_num")];
-    private static int volumeLedLast = 0;
-    private static int[] volumeArray = new int[ResourceUtils.getInteger("glyph_settings_volume_levels_num")];
 
     private static boolean callLedEnabled = false;
 
@@ -84,38 +78,6 @@ public final class StatusManager {
         essentialLedActive = status;
     }
 
-    public static int getChargingLedLast() {
-        return chargingLedLast;
-    }
-
-    public static void setChargingLedLast(int last) {
-        chargingLedLast = last;
-    }
-
-    public static int[] getBatteryArray() {
-        return batteryArray;
-    }
-
-    public static void setBatteryArray(int[] batteryArrayNext) {
-        batteryArray = batteryArrayNext;
-    }
-
-    public static int getVolumeLedLast() {
-        return volumeLedLast;
-    }
-
-    public static void setVolumeLedLast(int last) {
-        volumeLedLast = last;
-    }
-
-    public static int[] getVolumeArray() {
-        return volumeArray;
-    }
-
-    public static void setVolumeArray(int[] volumeArrayNext) {
-        volumeArray = volumeArrayNext;
-    }
-
     public static boolean isCallLedEnabled() {
         return callLedEnabled;
     }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import android.os.PowerManager;
+import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import co.aospa.glyph.Constants.Constants;
+
+/**
+ * Wake locks of the Glyph engine, one per feature. Every playback holds a
+ * token for as long as it is known to last, and the wake lock of its feature
+ * is held until the last token is released or expires. The time every
+ * feature kept the device awake is accounted for the dump.
+ */
+public final class WakeLockManager {
+
+    private static final String TAG = "GlyphWakeLockManager";
+    private static final boolean DEBUG = true;
+
+    // Covers handing over to the render thread and writing the last frame
+    public static final long MARGIN_MS = 250;
+
+    private static final class Feature {
+        final String name;
+        final WakeLock wakeLock;
+        final ArrayList<Token> tokens = new ArrayList<>();
+        long heldSinceMs = -1;
+        long deadlineMs = 0;
+        long totalHeldMs = 0;
+        int acquisitions = 0;
+
+        Feature(String name, WakeLock wakeLock) {
+            this.name = name;
+            this.wakeLock = wakeLock;
+        }
+    }
+
+    /** A hold on the wake lock of a feature, until released or expired. */
+    public static final class Token {
+        private final Feature mFeature;
+        private long mDeadlineMs;
+        private boolean mReleased = false;
+
+        private Token(Feature feature) {
+            mFeature = feature;
+        }
+    }
+
+    // Guarded by the class
+    private static final Map<String, Feature> features = new TreeMap<>();
+
+    /** Keeps the device awake for durationMs, plus a margin, on behalf of a feature. */
+    public static synchronized Token acquire(String feature, long durationMs) {
+        Feature target = features.get(feature);
+        if (target == null) {
+            PowerManager powerManager = Constants.CONTEXT.getSystemService(PowerManager.class);
+            WakeLock wakeLock = powerManager.newWakeLock(
+                    PowerManager.PARTIAL_WAKE_LOCK, "Glyph:" + feature);
+            wakeLock.setReferenceCounted(false);
+            target = new Feature(feature, wakeLock);
+            features.put(feature, target);
+        }
+
+        Token token = new Token(target);
+        token.mDeadlineMs = SystemClock.elapsedRealtime() + durationMs + MARGIN_MS;
+        target.tokens.add(token);
+        update(target);
+        return token;
+    }
+
+    /** Moves the end of a hold to durationMs, plus a margin, from now, even if it expired. */
+    public static synchronized void extend(Token token, long durationMs) {
+        if (token == null || token.mReleased) return;
+        token.mDeadlineMs = SystemClock.elapsedRealtime() + durationMs + MARGIN_MS;
+        if (!token.mFeature.tokens.contains(token)) token.mFeature.tokens.add(token);
+        update(token.mFeature);
+    }
+
+    public static synchronized void release(Token token) {
+        if (token == null || token.mReleased) return;
+        token.mReleased = true;
+        token.mFeature.tokens.remove(token);
+        update(token.mFeature);
+    }
+
+    private static void update(Feature feature) {
+        long now = SystemClock.elapsedRealtime();
+
+        // The wake lock times out on its own once all tokens expired
+        if (feature.heldSinceMs >= 0 && now >= feature.deadlineMs) {
+            feature.totalHeldMs += feature.deadlineMs - feature.heldSinceMs;
+            feature.heldSinceMs = -1;
+        }
+
+        long deadlineMs = 0;
+        for (int i = feature.tokens.size() - 1; i >= 0; i--) {
+            long tokenDeadlineMs = feature.tokens.get(i).mDeadlineMs;
+            if (tokenDeadlineMs <= now) {
+                feature.tokens.remove(i);
+            } else {
+                deadlineMs = Math.max(deadlineMs, tokenDeadlineMs);
+            }
+        }
+
+        if (feature.tokens.isEmpty()) {
+            if (feature.heldSinceMs >= 0) {
+                feature.totalHeldMs += now - feature.heldSinceMs;
+                feature.heldSinceMs = -1;
+                if (DEBUG) Log.d(TAG, "Released | feature: " + feature.name);
+            }
+            if (feature.wakeLock.isHeld()) feature.wakeLock.release();
+            return;
+        }
+
+        if (feature.heldSinceMs < 0) {
+            feature.heldSinceMs = now;
+            feature.acquisitions++;
+        }
+        if (deadlineMs != feature.deadlineMs) {
+            feature.deadlineMs = deadlineMs;
+            feature.wakeLock.acquire(deadlineMs - now);
+            if (DEBUG) Log.d(TAG, "Acquired | feature: " + feature.name
+                    + " | timeout: " + (deadlineMs - now) + " ms");
+        }
+    }
+
+    public static synchronized void dump(PrintWriter pw) {
+        pw.println("Wake locks:");
+        for (Feature feature : features.values()) {
+            update(feature);
+            long totalHeldMs = feature.totalHeldMs;
+            if (feature.heldSinceMs >= 0)
+                totalHeldMs += SystemClock.elapsedRealtime() - feature.heldSinceMs;
+            pw.println("  " + feature.name + ": held=" + (feature.heldSinceMs >= 0)
+                    + " acquisitions=" + feature.acquisitions + " total=" + totalHeldMs + " ms");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Manager;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+import co.aospa.glyph.Animation.AnimationLoader;
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Profile.DeviceProfile;
+import co.aospa.glyph.Utils.FileUtils;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Brings the Glyph engine to its steady state ahead of the first event: loads
+ * the static state, builds the animation catalog, decodes the animations that
+ * are likely to play first, opens the LED nodes and starts the render threads.
+ */
+public final class WarmUpManager {
+
+    private static final String TAG = "GlyphWarmUpManager";
+    private static final boolean DEBUG = true;
+
+    private static boolean warmedUp = false;
+
+    public static synchronized void warmUp() {
+        if (warmedUp) return;
+        warmedUp = true;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        long last = start;
+        StringBuilder timings = new StringBuilder("Warm-up done");
+
+        DeviceProfile.get();
+        Constants.getBrightness();
+        StatusManager.isAnimationActive();
+        last = lap(timings, "state", last);
+
+        ResourceUtils.getAnimationCatalog();
+        last = lap(timings, "catalog", last);
+
+        try {
+            AnimationLoader.getNotificationAnimation(SettingsManager.getGlyphNotifsAnimation());
+            AnimationLoader.getCallAnimation(SettingsManager.getGlyphCallAnimation());
+            AnimationLoader.getAnimation("flip");
+            AnimationLoader.getAnimation("powershare");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to decode animation during warm-up", e);
+        }
+        last = lap(timings, "decode", last);
+
+        FileUtils.openLedNodes();
+        last = lap(timings, "nodes", last);
+
+        AnimationManager.prime();
+        RenderClock.prime();
+        last = lap(timings, "render", last);
+
+        if (DEBUG) Log.d(TAG, timings.append(" | total: ")
+                .append((last - start) / 1_000_000f).append(" ms").toString());
+    }
+
+    private static long lap(StringBuilder timings, String phase, long since) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        timings.append(" | ").append(phase).append(": ")
+                .append((now - since) / 1_000_000f).append(" ms");
+        return now;
+    }
+}
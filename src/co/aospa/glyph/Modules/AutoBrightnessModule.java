@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Manager.BrightnessManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Sensors.SensorHub;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+public class AutoBrightnessModule extends GlyphModule {
+
+    private static final String TAG = "GlyphAutoBrightnessModule";
+    private static final boolean DEBUG = true;
+
+    private static final int SENSOR_DELAY_NORMAL_US = 200_000;
+
+    // Lux estimate time constant, short flickers don't move the brightness
+    private static final float LUX_TIME_CONSTANT_NANOS = 2_000_000_000f;
+    // Relative lux change from the last applied estimate needed to brighten or darken
+    private static final float BRIGHTENING_HYSTERESIS = 0.1f;
+    private static final float DARKENING_HYSTERESIS = 0.2f;
+
+    private final SensorHub mSensorHub;
+    private int mSensorType = -1;
+    private static final int[] AutoBrightnessLux = ResourceUtils.getIntArray("glyph_auto_brightness_levels");
+    private static final int[] BrightnessValues = Constants.getBrightnessLevels();
+
+    private float mLux = -1;
+    private long mLuxTime = 0;
+    private float mAppliedLux = -1;
+    private int mUpdates = 0;
+
+    public AutoBrightnessModule(Context context, Handler handler, SensorHub sensorHub) {
+        super(context, handler);
+        mSensorHub = sensorHub;
+    }
+
+    @Override
+    public String getName() {
+        return "auto_brightness";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphAutoBrightnessEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        // Get light sensor type
+        mSensorType = mSensorHub.getSensorType(ResourceUtils.getString("glyph_light_sensor"));
+        if (mSensorType == -1 || AutoBrightnessLux.length == 0) {
+            Log.w(TAG, "No light sensor for auto brightness");
+            return;
+        }
+
+        mLux = -1;
+        mAppliedLux = -1;
+        mSensorHub.subscribe(mSensorType, mLightListener, SENSOR_DELAY_NORMAL_US, 0, mHandler);
+    }
+
+    @Override
+    protected void onDisable() {
+        if (mSensorType != -1)
+            mSensorHub.unsubscribe(mSensorType, mLightListener);
+    }
+
+    private final SensorHub.Listener mLightListener = (timestamp, lux, y, z) -> {
+        if (mLux < 0) {
+            mLux = lux;
+        } else {
+            float alpha = 1f - (float) Math.exp(-(timestamp - mLuxTime) / LUX_TIME_CONSTANT_NANOS);
+            mLux += alpha * (lux - mLux);
+        }
+        mLuxTime = timestamp;
+
+        if (mAppliedLux >= 0
+                && mLux <= mAppliedLux * (1 + BRIGHTENING_HYSTERESIS)
+                && mLux >= mAppliedLux * (1 - DARKENING_HYSTERESIS))
+            return;
+        mAppliedLux = mLux;
+
+        int brightnessValue = getBrightness(mLux);
+        if (brightnessValue != Constants.getBrightness()) {
+            if (DEBUG) Log.d(TAG, "Brightness changed: " + "RealLux: " + lux
+                    + " | SmoothedLux: " + mLux + " | BrightnessValue: " + brightnessValue);
+            mUpdates++;
+            BrightnessManager.rampTo(brightnessValue);
+        }
+    };
+
+    /** Interpolates the brightness between the levels surrounding the lux value. */
+    private static int getBrightness(float lux) {
+        int index = Arrays.binarySearch(AutoBrightnessLux, (int) lux);
+        if (index >= 0) return BrightnessValues[index];
+
+        int upper = -index - 1;
+        if (upper == 0) return BrightnessValues[0];
+        if (upper >= AutoBrightnessLux.length) return BrightnessValues[AutoBrightnessLux.length - 1];
+
+        int lower = upper - 1;
+        float fraction = (lux - AutoBrightnessLux[lower])
+                / (AutoBrightnessLux[upper] - AutoBrightnessLux[lower]);
+        return Math.round(BrightnessValues[lower]
+                + fraction * (BrightnessValues[upper] - BrightnessValues[lower]));
+    }
+
+    @Override
+    public void dump(PrintWriter pw) {
+        super.dump(pw);
+        pw.println("    lux: " + mLux + " | applied lux: " + mAppliedLux
+                + " | brightness: " + Constants.getBrightness() + " | updates: " + mUpdates);
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.AudioPlaybackConfiguration;
+import android.media.MediaMetadataRetriever;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.ContactsContract.PhoneLookup;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+
+import co.aospa.glyph.Animation.AnimationCatalog;
+import co.aospa.glyph.Contacts.ContactAnimationCache;
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+public class CallReceiverModule extends GlyphModule {
+
+    private static final String TAG = "GlyphCallReceiverModule";
+    private static final boolean DEBUG = true;
+
+    // Both ringing broadcasts are sent back to back, only one of them has the number
+    private static final long NUMBER_TIMEOUT_MS = 500;
+
+    private static final String[] RINGTONE_PROJECTION = { PhoneLookup.CUSTOM_RINGTONE };
+
+    private AudioManager mAudioManager;
+    private ContactAnimationCache mContactAnimations;
+
+    // Ringtones are looked up and measured off the module thread, reading them blocks
+    private HandlerThread mProbeThread;
+    private Handler mProbeHandler;
+
+    // Only accessed on the probe thread
+    private final HashMap<Uri, Long> mRingtoneDurations = new HashMap<>();
+
+    // Only accessed on the handler thread
+    private boolean mNumbersAvailable = false;
+    private boolean mNumberReceived = false;
+    private boolean mRinging = false;
+    private int mCall = 0;
+    private boolean mRingtoneStarted = false;
+    private long mRingtoneAnchorNanos = -1;
+    private Uri mRingtoneUri;
+    private long mRingtoneDurationNanos = 0;
+    private long mRingtoneLatencyMs = 0;
+
+    public CallReceiverModule(Context context, Handler handler) {
+        super(context, handler);
+    }
+
+    @Override
+    public String getName() {
+        return "call";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphCallEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        if (mContactAnimations == null) mContactAnimations = new ContactAnimationCache(mContext);
+        mContactAnimations.start();
+
+        mProbeThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mProbeThread.start();
+        mProbeHandler = new Handler(mProbeThread.getLooper());
+        // Measured ahead, so the first call doesn't wait for it
+        mProbeHandler.post(() -> measureRingtone(getDefaultRingtoneUri()));
+
+        mNumbersAvailable = mContext.checkSelfPermission(Manifest.permission.READ_CALL_LOG)
+                == PackageManager.PERMISSION_GRANTED;
+
+        mAudioManager = mContext.getSystemService(AudioManager.class);
+        mAudioManager.addOnModeChangedListener(cmd -> mHandler.post(cmd), mAudioManagerOnModeChangedListener);
+        mAudioManagerOnModeChangedListener.onModeChanged(mAudioManager.getMode());
+
+        IntentFilter callReceiver = new IntentFilter();
+        callReceiver.addAction(TelephonyManager.ACTION_PHONE_STATE_CHANGED);
+        mContext.registerReceiver(mCallReceiver, callReceiver, null, mHandler);
+    }
+
+    @Override
+    protected void onDisable() {
+        mContext.unregisterReceiver(mCallReceiver);
+        mAudioManager.removeOnModeChangedListener(mAudioManagerOnModeChangedListener);
+        disableCallAnimation();
+        mContactAnimations.stop();
+        mProbeThread.quitSafely();
+        mProbeThread = null;
+        mProbeHandler = null;
+    }
+
+    /**
+     * Holders of READ_CALL_LOG get a ringing broadcast with the number and one
+     * without, in any order. Wait briefly for the number, so a contact's call
+     * doesn't open with the default animation and jump to its own.
+     */
+    private void onRinging(String number) {
+        if (number != null) {
+            mHandler.removeCallbacks(mRingWithoutNumber);
+            mNumberReceived = true;
+            enableCallAnimation(number);
+        } else if (!mNumbersAvailable) {
+            enableCallAnimation(null);
+        } else if (!mNumberReceived) {
+            mHandler.removeCallbacks(mRingWithoutNumber);
+            mHandler.postDelayed(mRingWithoutNumber, NUMBER_TIMEOUT_MS);
+        }
+    }
+
+    private final Runnable mRingWithoutNumber = () -> {
+        if (DEBUG) Log.d(TAG, "No incoming number, playing the default animation");
+        enableCallAnimation(null);
+    };
+
+    private void enableCallAnimation(String number) {
+        if (DEBUG) Log.d(TAG, "enableCallAnimation");
+        String animation = mContactAnimations.getAnimation(number);
+        if (animation == null) animation = SettingsManager.getGlyphCallAnimation();
+        // The call animation loops on the render clock until it is stopped
+        AnimationManager.playCall(animation);
+
+        int call = mRinging ? mCall : ++mCall;
+        mProbeHandler.post(() -> {
+            Uri uri = getRingtoneUri(number);
+            long durationNanos = measureRingtone(uri);
+            mHandler.post(() -> onRingtoneMeasured(call, uri, durationNanos));
+        });
+
+        if (mRinging) return;
+        mRinging = true;
+        mRingtoneStarted = false;
+        mRingtoneAnchorNanos = -1;
+        mRingtoneUri = null;
+        mRingtoneDurationNanos = 0;
+        mAudioManager.registerAudioPlaybackCallback(mPlaybackCallback, mHandler);
+        onPlaybackConfigChanged(mAudioManager.getActivePlaybackConfigurations());
+    }
+
+    private void disableCallAnimation() {
+        if (DEBUG) Log.d(TAG, "disableCallAnimation");
+        mHandler.removeCallbacks(mRingWithoutNumber);
+        mNumberReceived = false;
+        AnimationManager.stopCall();
+
+        if (!mRinging) return;
+        mRinging = false;
+        mAudioManager.unregisterAudioPlaybackCallback(mPlaybackCallback);
+        // Measured after the call, so a new default ringtone adds no latency to the next one
+        mProbeHandler.post(() -> measureRingtone(getDefaultRingtoneUri()));
+    }
+
+    private void onRingtoneMeasured(int call, Uri uri, long durationNanos) {
+        if (!mRinging || call != mCall) return;
+        mRingtoneUri = uri;
+        mRingtoneDurationNanos = durationNanos;
+        if (mRingtoneAnchorNanos >= 0)
+            AnimationManager.syncCall(mRingtoneAnchorNanos, mRingtoneDurationNanos);
+    }
+
+    private void onPlaybackConfigChanged(List<AudioPlaybackConfiguration> configs) {
+        if (mRingtoneStarted || configs == null) return;
+        for (AudioPlaybackConfiguration config : configs) {
+            if (config.getAudioAttributes().getUsage() != AudioAttributes.USAGE_NOTIFICATION_RINGTONE
+                    || config.getPlayerState() != AudioPlaybackConfiguration.PLAYER_STATE_STARTED)
+                continue;
+
+            // The ringtone plays in the system server, the player state is all we see of
+            // it. Its start is estimated as the delivery of this callback plus the output
+            // latency, so binder and handler delays add to the error
+            mRingtoneStarted = true;
+            mRingtoneLatencyMs = mAudioManager.getOutputLatency(AudioManager.STREAM_RING);
+            mRingtoneAnchorNanos = SystemClock.elapsedRealtimeNanos()
+                    + mRingtoneLatencyMs * 1_000_000L;
+            if (DEBUG) Log.d(TAG, "Ringtone started | latency: " + mRingtoneLatencyMs
+                    + " ms | duration: " + mRingtoneDurationNanos / 1_000_000L + " ms");
+            // Without the duration yet, it is passed on once measured
+            AnimationManager.syncCall(mRingtoneAnchorNanos, mRingtoneDurationNanos);
+            return;
+        }
+    }
+
+    private Uri getDefaultRingtoneUri() {
+        return RingtoneManager.getActualDefaultRingtoneUri(mContext, RingtoneManager.TYPE_RINGTONE);
+    }
+
+    /** Returns the ringtone a call from the given number rings with, on the probe thread. */
+    private Uri getRingtoneUri(String number) {
+        if (number == null || mContext.checkSelfPermission(Manifest.permission.READ_CONTACTS)
+                != PackageManager.PERMISSION_GRANTED)
+            return getDefaultRingtoneUri();
+
+        Uri lookup = Uri.withAppendedPath(PhoneLookup.CONTENT_FILTER_URI, Uri.encode(number));
+        try (Cursor cursor = mContext.getContentResolver().query(
+                lookup, RINGTONE_PROJECTION, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && cursor.getString(0) != null)
+                return Uri.parse(cursor.getString(0));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not look up contact ringtone", e);
+        }
+        return getDefaultRingtoneUri();
+    }
+
+    /** Returns the duration of a ringtone, or 0 if unknown, on the probe thread. */
+    private long measureRingtone(Uri uri) {
+        if (uri == null) return 0;
+        Long cached = mRingtoneDurations.get(uri);
+        if (cached != null) return cached;
+
+        long durationNanos = 0;
+        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+            retriever.setDataSource(mContext, uri);
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) durationNanos = Long.parseLong(duration) * 1_000_000L;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not measure ringtone | uri: " + uri, e);
+        }
+        mRingtoneDurations.put(uri, durationNanos);
+        if (DEBUG) Log.d(TAG, "Measured ringtone | uri: " + uri
+                + " | duration: " + durationNanos / 1_000_000L + " ms");
+        return durationNanos;
+    }
+
+    private final AudioManager.AudioPlaybackCallback mPlaybackCallback =
+            new AudioManager.AudioPlaybackCallback() {
+        @Override
+        public void onPlaybackConfigChanged(List<AudioPlaybackConfiguration> configs) {
+            CallReceiverModule.this.onPlaybackConfigChanged(configs);
+        }
+    };
+
+    private final BroadcastReceiver mCallReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getAction().equals(TelephonyManager.ACTION_PHONE_STATE_CHANGED)) {
+                String state = intent.getStringExtra(TelephonyManager.EXTRA_STATE);
+                if(state.equals(TelephonyManager.EXTRA_STATE_RINGING)){
+                    if (DEBUG) Log.d(TAG, "EXTRA_STATE_RINGING");
+                    onRinging(intent.getStringExtra(TelephonyManager.EXTRA_INCOMING_NUMBER));
+                }
+                if ((state.equals(TelephonyManager.EXTRA_STATE_OFFHOOK))){
+                    if (DEBUG) Log.d(TAG, "EXTRA_STATE_OFFHOOK");
+                    disableCallAnimation();
+                }
+                if (state.equals(TelephonyManager.EXTRA_STATE_IDLE)){
+                    if (DEBUG) Log.d(TAG, "EXTRA_STATE_IDLE");
+                    disableCallAnimation();
+                }
+            }
+        }
+    };
+
+    private final AudioManager.OnModeChangedListener mAudioManagerOnModeChangedListener = new AudioManager.OnModeChangedListener() {
+        @Override
+        public void onModeChanged(int mode) {
+            if (mode != AudioManager.MODE_RINGTONE) {
+                if (DEBUG) Log.d(TAG, "mAudioManagerOnModeChangedListener: " + mode);
+                disableCallAnimation();
+            }
+        }
+    };
+
+    @Override
+    public void dump(PrintWriter pw) {
+        super.dump(pw);
+        pw.println("    ringtone: " + mRingtoneUri + " | duration: " + mRingtoneDurationNanos / 1_000_000L
+                + " ms | latency: " + mRingtoneLatencyMs + " ms");
+        if (mContactAnimations != null) mContactAnimations.dump(pw);
+    }
+
+    /**
+     * Assigns call animations from the shell, until there is a picker:
+     *   call contact <lookup key> <animation|none>
+     *   call group <group id> <animation|none>
+     *   call lookup <number>
+     */
+    @Override
+    public boolean onCommand(String[] args, PrintWriter pw) {
+        if (args.length == 2 && "lookup".equals(args[0])) {
+            if (mContactAnimations == null || !isEnabled()) {
+                pw.println("Call animations are disabled");
+                return true;
+            }
+            String animation = mContactAnimations.getAnimation(args[1]);
+            pw.println(animation != null ? animation
+                    : "default (" + SettingsManager.getGlyphCallAnimation() + ")");
+            return true;
+        }
+        if (args.length != 3 || !("contact".equals(args[0]) || "group".equals(args[0])))
+            return false;
+
+        String animation = "none".equals(args[2]) ? null : args[2];
+        if (animation != null && ResourceUtils.getAnimationCatalog()
+                .get(AnimationCatalog.CATEGORY_CALL, animation) == null) {
+            pw.println("Unknown call animation: " + animation);
+            return true;
+        }
+        if ("contact".equals(args[0])) {
+            SettingsManager.setGlyphCallContactAnimation(args[1], animation);
+        } else {
+            try {
+                SettingsManager.setGlyphCallGroupAnimation(Long.parseLong(args[1]), animation);
+            } catch (NumberFormatException e) {
+                pw.println("Invalid group id: " + args[1]);
+                return true;
+            }
+        }
+        pw.println("Set call animation of " + args[0] + " " + args[1] + " to "
+                + (animation != null ? animation : "default"));
+        return true;
+    }
+}
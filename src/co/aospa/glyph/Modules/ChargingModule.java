@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.util.Log;
+
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Sensors.SensorHub;
+
+public class ChargingModule extends GlyphModule {
+
+    private static final String TAG = "GlyphChargingModule";
+    private static final boolean DEBUG = true;
+
+    private BatteryManager mBatteryManager;
+    private SensorManager mSensorManager;
+    private final SensorHub mSensorHub;
+
+    private PowerManager mPowerManager;
+
+    // Wake-up gesture sensors by preference, the accelerometer is the fallback
+    private static final int[] PICK_UP_SENSORS = {
+        Sensor.TYPE_PICK_UP_GESTURE,
+        Sensor.TYPE_TILT_DETECTOR,
+        Sensor.TYPE_SIGNIFICANT_MOTION,
+    };
+    private Sensor mPickUpSensor;
+    private boolean mPickUpRegistered = false;
+
+    // Thresholds are squared, so no square root is taken per sample
+    private static final float ACCELEROMETER_THRESHOLD_SQUARED = 10.0f * 10.0f;
+    private static final float ZFACEDOWN_THRESHOLD = -5.0f;
+    private static final int SENSOR_DELAY_NORMAL_US = 200_000;
+    private static final int ACCELEROMETER_MAX_LATENCY_US = 500_000;
+
+    private Runnable dismissCharging = new Runnable() {
+        @Override
+        public void run() {
+            AnimationManager.dismissCharging();
+        }
+    };
+
+    public ChargingModule(Context context, Handler handler, SensorHub sensorHub) {
+        super(context, handler);
+        mSensorHub = sensorHub;
+    }
+
+    @Override
+    public String getName() {
+        return "charging";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphChargingEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        mBatteryManager = mContext.getSystemService(BatteryManager.class);
+        mSensorManager = mContext.getSystemService(SensorManager.class);
+        mPowerManager = mContext.getSystemService(PowerManager.class);
+
+        mPickUpSensor = null;
+        for (int type : PICK_UP_SENSORS) {
+            mPickUpSensor = mSensorHub.getDefaultSensor(type);
+            if (mPickUpSensor != null) break;
+        }
+        if (DEBUG) Log.d(TAG, "Pick-up sensor: "
+                + (mPickUpSensor != null ? mPickUpSensor.getStringType() : "accelerometer"));
+
+        IntentFilter powerMonitor = new IntentFilter();
+        powerMonitor.addAction(Intent.ACTION_POWER_CONNECTED);
+        powerMonitor.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        mContext.registerReceiver(mPowerMonitor, powerMonitor, null, mHandler);
+    }
+
+    @Override
+    protected void onDisable() {
+        mContext.unregisterReceiver(mPowerMonitor);
+        onPowerDisconnected();
+        mHandler.removeCallbacks(dismissCharging);
+    }
+
+    private int getBatteryLevel() {
+        return mBatteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+    }
+
+    private void onPowerConnected() {
+        if (DEBUG) Log.d(TAG, "Power connected");
+        if (DEBUG) Log.d(TAG, "Battery level: " + getBatteryLevel());
+        playChargingAnimation();
+        registerPickUpSensor();
+    }
+
+    private void onPowerDisconnected() {
+        if (DEBUG) Log.d(TAG, "Power disconnected");
+        unregisterPickUpSensor();
+    }
+
+    private void registerPickUpSensor() {
+        if (mPickUpRegistered) return;
+        mPickUpRegistered = true;
+        if (mPickUpSensor == null) {
+            // Batched, a bump only needs to be seen within the latency
+            mSensorHub.subscribe(Sensor.TYPE_ACCELEROMETER, mAccelerometerListener,
+                    SENSOR_DELAY_NORMAL_US, ACCELEROMETER_MAX_LATENCY_US, mHandler);
+        } else if (mPickUpSensor.getReportingMode() == Sensor.REPORTING_MODE_ONE_SHOT) {
+            mSensorManager.requestTriggerSensor(mTriggerListener, mPickUpSensor);
+        } else {
+            mSensorHub.subscribe(mPickUpSensor.getType(), mGestureListener, 0, 0, mHandler);
+        }
+    }
+
+    private void unregisterPickUpSensor() {
+        if (!mPickUpRegistered) return;
+        mPickUpRegistered = false;
+        if (mPickUpSensor == null) {
+            mSensorHub.unsubscribe(Sensor.TYPE_ACCELEROMETER, mAccelerometerListener);
+        } else if (mPickUpSensor.getReportingMode() == Sensor.REPORTING_MODE_ONE_SHOT) {
+            mSensorManager.cancelTriggerSensor(mTriggerListener, mPickUpSensor);
+        } else {
+            mSensorHub.unsubscribe(mPickUpSensor.getType(), mGestureListener);
+        }
+    }
+
+    private void onPickUp() {
+        // Events of a batch may all cross the threshold, play once
+        if (mHandler.hasCallbacks(dismissCharging)) return;
+        if (mPowerManager.isInteractive()) return;
+        if (DEBUG) Log.d(TAG, "Picked up while charging");
+        playChargingAnimation();
+    }
+
+    private void playChargingAnimation() {
+        if (mHandler.hasCallbacks(dismissCharging))
+            mHandler.removeCallbacks(dismissCharging);
+        int batteryLevel = getBatteryLevel();
+        AnimationManager.playCharging(batteryLevel);
+        mHandler.postDelayed(dismissCharging, 1190);
+    }
+
+    private final BroadcastReceiver mPowerMonitor = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getAction().equals(Intent.ACTION_POWER_CONNECTED)) {
+                onPowerConnected();
+            } else if (intent.getAction().equals(Intent.ACTION_POWER_DISCONNECTED)) {
+                onPowerDisconnected();
+            }
+        }
+    };
+
+    private final SensorHub.Listener mAccelerometerListener = (timestamp, x, y, z) -> {
+        if (z <= ZFACEDOWN_THRESHOLD
+                && x * x + y * y + z * z > ACCELEROMETER_THRESHOLD_SQUARED) {
+            onPickUp();
+        }
+    };
+
+    private final SensorHub.Listener mGestureListener = (timestamp, x, y, z) -> onPickUp();
+
+    private final TriggerEventListener mTriggerListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            // One-shot sensors disarm after triggering
+            mHandler.post(() -> {
+                if (!mPickUpRegistered) return;
+                mSensorManager.requestTriggerSensor(mTriggerListener, mPickUpSensor);
+                onPickUp();
+            });
+        }
+    };
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Sensors.FlipToGlyphSensor;
+import co.aospa.glyph.Sensors.SensorHub;
+
+public class FlipToGlyphModule extends GlyphModule {
+
+    private static final String TAG = "FlipToGlyphModule";
+    private static final boolean DEBUG = true;
+
+    private static final String TRACE_DIRECTORY = "flip_traces";
+
+    private boolean isFlipped;
+    private int ringerMode;
+
+    private AudioManager mAudioManager;
+    private FlipToGlyphSensor mFlipToGlyphSensor;
+    private final SensorHub mSensorHub;
+
+    public FlipToGlyphModule(Context context, Handler handler, SensorHub sensorHub) {
+        super(context, handler);
+        mSensorHub = sensorHub;
+    }
+
+    @Override
+    public String getName() {
+        return "flip";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphFlipEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        if (mFlipToGlyphSensor == null) {
+            mFlipToGlyphSensor = new FlipToGlyphSensor(mContext, this::onFlip, mHandler, mSensorHub);
+            mAudioManager = mContext.getSystemService(AudioManager.class);
+        }
+        mFlipToGlyphSensor.enable();
+    }
+
+    @Override
+    protected void onDisable() {
+        mFlipToGlyphSensor.disable();
+    }
+
+    private void onFlip(boolean flipped) {
+        if (flipped == isFlipped) return;
+        if (DEBUG) Log.d(TAG, "Flipped: " + flipped);
+        if (flipped) {
+            AnimationManager.playCsv("flip");
+            ringerMode = mAudioManager.getRingerModeInternal();
+            mAudioManager.setRingerModeInternal(AudioManager.RINGER_MODE_SILENT);
+        } else {
+            mAudioManager.setRingerModeInternal(ringerMode);
+        }
+        isFlipped = flipped;
+    }
+
+    @Override
+    public void dump(PrintWriter pw) {
+        super.dump(pw);
+        if (mFlipToGlyphSensor != null) mFlipToGlyphSensor.dump(pw);
+    }
+
+    // dumpsys activity service co.aospa.glyph/.Services.GlyphCoreService flip trace start|stop|down|up
+    // down and up label the trace with the state the device was just put in
+    @Override
+    public boolean onCommand(String[] args, PrintWriter pw) {
+        if (args.length != 2 || !"trace".equals(args[0])) return false;
+        if (mFlipToGlyphSensor == null || !isEnabled()) {
+            pw.println("Flip to Glyph is disabled");
+            return true;
+        }
+        if ("start".equals(args[1])) {
+            try {
+                pw.println("Recording flip trace to "
+                        + mFlipToGlyphSensor.startTrace(new File(mContext.getFilesDir(), TRACE_DIRECTORY)));
+            } catch (IOException e) {
+                pw.println("Failed to start flip trace: " + e);
+            }
+            return true;
+        }
+        if ("stop".equals(args[1])) {
+            File file = mFlipToGlyphSensor.stopTrace();
+            pw.println(file != null ? "Recorded flip trace to " + file : "No flip trace recording");
+            return true;
+        }
+        if ("down".equals(args[1]) || "up".equals(args[1])) {
+            boolean flipped = "down".equals(args[1]);
+            pw.println(mFlipToGlyphSensor.markTrace(flipped)
+                    ? "Marked flip trace | flipped: " + flipped : "No flip trace recording");
+            return true;
+        }
+        return false;
+    }
+}
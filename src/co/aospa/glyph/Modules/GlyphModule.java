@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Modules;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * A feature hosted by the GlyphCoreService. Modules receive their events on
+ * the shared event handler and must never block it, animations are handed
+ * over to the AnimationManager render thread.
+ */
+public abstract class GlyphModule {
+
+    private static final String TAG = "GlyphModule";
+    private static final boolean DEBUG = true;
+
+    protected final Context mContext;
+    protected final Handler mHandler;
+
+    private boolean mEnabled = false;
+
+    protected GlyphModule(Context context, Handler handler) {
+        mContext = context;
+        mHandler = handler;
+    }
+
+    public abstract String getName();
+
+    /** Whether the feature is enabled in settings. */
+    public abstract boolean isEnabledInSettings();
+
+    protected abstract void onEnable();
+
+    protected abstract void onDisable();
+
+    public final boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /** Enables or disables the module, must be called on the event handler. */
+    public final void setEnabled(boolean enabled) {
+        if (enabled == mEnabled) return;
+        if (DEBUG) Log.d(TAG, (enabled ? "Enabling " : "Disabling ") + getName());
+        mEnabled = enabled;
+        if (enabled) {
+            onEnable();
+        } else {
+            onDisable();
+        }
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.println("  " + getName() + ": " + (mEnabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Handles a debug command, given to the service dump after the module name.
+     * Runs on the event thread, returns false if the command is unknown.
+     */
+    public boolean onCommand(String[] args, PrintWriter pw) {
+        return false;
+    }
+}
@@ -14,29 +14,24 @@
  * limitations under the License.
  */
 
-package co.aospa.glyph.Services;
+package co.aospa.glyph.Modules;
 
-import android.app.Service;
 import android.content.Context;
-import android.content.Intent;
 import android.media.AudioManager;
 import android.media.audiofx.Visualizer;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.IBinder;
-import android.os.Looper;
 import android.util.Log;
 
 import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.RenderGovernor;
+import co.aospa.glyph.Manager.SettingsManager;
 
-public class MusicVisualizerService extends Service {
+public class MusicVisualizerModule extends GlyphModule {
 
-    private static final String TAG = "GlyphMusicVisualizerService";
+    private static final String TAG = "GlyphMusicVisualizerModule";
     private static final boolean DEBUG = true;
 
     private AudioManager mAudioManager;
-    private HandlerThread thread;
-    private Handler mHandler;
     private Visualizer mVisualizer;
     private int bufferSize;
     private boolean isRecording = false;
@@ -53,18 +48,29 @@ public class MusicVisualizerService extends Service {
     private static final int MID_HIGH_FREQUENCY = 5000;
     private static final int HIGH_FREQUENCY = 10000;
 
+    // How long a beat stays lit
+    private static final long BEAT_DURATION_MS = 106;
+
+    private final Runnable mStopMusic = AnimationManager::stopMusic;
+
+    public MusicVisualizerModule(Context context, Handler handler) {
+        super(context, handler);
+    }
+
     @Override
-    public void onCreate() {
-        if (DEBUG) Log.d(TAG, "Creating service");
+    public String getName() {
+        return "music_visualizer";
+    }
 
-        // Run visualizer on a handler thread
-        thread = new HandlerThread("MusicVisualizerService");
-        thread.start();
-        Looper looper = thread.getLooper();
-        mHandler = new Handler(looper);
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphMusicVisualizerEnabled() && RenderGovernor.isMusicAllowed();
+    }
 
+    @Override
+    protected void onEnable() {
         // Get audio service
-        mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        mAudioManager = mContext.getSystemService(AudioManager.class);
 
         // Create a visualizer with the audio session ID (0) which takes the entire output mix
         mVisualizer = new Visualizer(0);
@@ -73,59 +79,53 @@ public class MusicVisualizerService extends Service {
         bufferSize = Visualizer.getCaptureSizeRange()[1];
         mVisualizer.setCaptureSize(bufferSize);
 
-        mHandler.post(() -> {
-            // Set data capture listener for visualizer
-            mVisualizer.setDataCaptureListener(
-                new Visualizer.OnDataCaptureListener() {
-                    @Override
-                    public void onWaveFormDataCapture(Visualizer visualizer, byte[] waveform, int samplingRate) {
-                    }
-
-                    @Override
-                    public void onFftDataCapture(Visualizer visualizer, byte[] fft, int samplingRate) {
-                        if (mAudioManager.isMusicActive()) {
-                            if (DEBUG) Log.d(TAG, "Music is active");
-                            processAudioFFT(fft, samplingRate);
-                        }
+        // Set data capture listener for visualizer, callbacks arrive on the looper
+        // of the thread the visualizer was created on
+        mVisualizer.setDataCaptureListener(
+            new Visualizer.OnDataCaptureListener() {
+                @Override
+                public void onWaveFormDataCapture(Visualizer visualizer, byte[] waveform, int samplingRate) {
+                }
+
+                @Override
+                public void onFftDataCapture(Visualizer visualizer, byte[] fft, int samplingRate) {
+                    if (mAudioManager.isMusicActive()) {
+                        if (DEBUG) Log.d(TAG, "Music is active");
+                        processAudioFFT(fft, samplingRate);
                     }
-                }, Visualizer.getMaxCaptureRate() / 2, false, true
-            );
-
-            // Enable visualizer
-            mVisualizer.setEnabled(true);
-
-            // Initialize instance variables
-            mRunningSoundAvg = new double[5];
-            mCurrentAvgEnergyOneSec = new double[5];
-            mCurrentAvgEnergyOneSec[0] = -1;
-            mCurrentAvgEnergyOneSec[1] = -1;
-            mCurrentAvgEnergyOneSec[2] = -1;
-            mCurrentAvgEnergyOneSec[3] = -1;
-            mCurrentAvgEnergyOneSec[4] = -1;
-
-            // Set the start time for the current one second interval
-            mSystemTimeStartSec = System.currentTimeMillis();
-        });
+                }
+            }, Visualizer.getMaxCaptureRate() / 2, false, true
+        );
+
+        // Enable visualizer
+        mVisualizer.setEnabled(true);
+
+        // Initialize instance variables
+        mRunningSoundAvg = new double[5];
+        mCurrentAvgEnergyOneSec = new double[5];
+        mCurrentAvgEnergyOneSec[0] = -1;
+        mCurrentAvgEnergyOneSec[1] = -1;
+        mCurrentAvgEnergyOneSec[2] = -1;
+        mCurrentAvgEnergyOneSec[3] = -1;
+        mCurrentAvgEnergyOneSec[4] = -1;
+
+        // Set the start time for the current one second interval
+        mSystemTimeStartSec = System.currentTimeMillis();
     }
 
     @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        if (DEBUG) Log.d(TAG, "Starting service");
-        return START_STICKY;
-    }
-
-    @Override
-    public void onDestroy() {
-        if (DEBUG) Log.d(TAG, "Destroying service");
+    protected void onDisable() {
         mVisualizer.setEnabled(false);
         mVisualizer.release();
-        thread.quit();
-        super.onDestroy();
+        mVisualizer = null;
+        mHandler.removeCallbacks(mStopMusic);
+        AnimationManager.stopMusic();
     }
 
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
+    private void playMusic(String name) {
+        AnimationManager.playMusic(name);
+        mHandler.removeCallbacks(mStopMusic);
+        mHandler.postDelayed(mStopMusic, BEAT_DURATION_MS);
     }
 
     private void processAudioFFT(byte[] audioBytes, int samplingRate) {
@@ -171,7 +171,7 @@ public class MusicVisualizerService extends Service {
             // Also make sure the mCurrentAvgEnergy has been set, otherwise its -1 before its first pass
             if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[0]) && (mCurrentAvgEnergyOneSec[0] > 0)) {
                 if (DEBUG) Log.d(TAG, "Low frequency band beat detected");
-                AnimationManager.playMusic("low");
+                playMusic("low");
             }
 
             energySum = 0;
@@ -195,7 +195,7 @@ public class MusicVisualizerService extends Service {
             // Check for a beat in the mid-low frequency band
             if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[1]) && (mCurrentAvgEnergyOneSec[1] > 0)) {
                 if (DEBUG) Log.d(TAG, "Mid-low frequency band beat detected");
-                AnimationManager.playMusic("mid_low");
+                playMusic("mid_low");
             }
 
             energySum = 0;
@@ -219,7 +219,7 @@ public class MusicVisualizerService extends Service {
             // Check for a beat in the mid frequency band
             if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[2]) && (mCurrentAvgEnergyOneSec[2] > 0)) {
                 if (DEBUG) Log.d(TAG, "Mid frequency band beat detected");
-                AnimationManager.playMusic("mid");
+                playMusic("mid");
             }
 
             energySum = 0;
@@ -243,7 +243,7 @@ public class MusicVisualizerService extends Service {
             // Check for a beat in the mid-high frequency band
             if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[3]) && (mCurrentAvgEnergyOneSec[3] > 0)) {
                 if (DEBUG) Log.d(TAG, "Mid-high frequency band beat detected");
-                AnimationManager.playMusic("mid_high");
+                playMusic("mid_high");
             }
 
             // Second Byte: Only imaginary part of the last frequency (include in highs)
@@ -268,7 +268,7 @@ public class MusicVisualizerService extends Service {
             // Check for a beat in the high frequency band
             if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[4]) && (mCurrentAvgEnergyOneSec[4] > 0)) {
                 if (DEBUG) Log.d(TAG, "High frequency band beat detected");
-                AnimationManager.playMusic("high");
+                playMusic("high");
             }
 
             long currentTime = System.currentTimeMillis();
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Sysfs.SysfsWatcher;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+public class PowershareModule extends GlyphModule {
+
+    private static final String TAG = "GlyphPowershareModule";
+    private static final boolean DEBUG = true;
+
+    private static final String POWERSHARE_ACTIVE = ResourceUtils.getString("glyph_settings_paths_powershare_active_absolute");
+    private static final String POWERSHARE_ENABLED = ResourceUtils.getString("glyph_settings_paths_powershare_enabled_absolute");
+
+    private boolean lastState = false;
+
+    private final SysfsWatcher mSysfsWatcher = SysfsWatcher.get();
+
+    public PowershareModule(Context context, Handler handler) {
+        super(context, handler);
+    }
+
+    @Override
+    public String getName() {
+        return "powershare";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphPowershareEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        mSysfsWatcher.watchBoolean(POWERSHARE_ENABLED, mPowershareEnabledCallback, mHandler);
+    }
+
+    @Override
+    protected void onDisable() {
+        mSysfsWatcher.unwatch(POWERSHARE_ENABLED, mPowershareEnabledCallback);
+        onPowershareDisabled();
+    }
+
+    private void onPowershareEnabled() {
+        if (DEBUG) Log.d(TAG, "onPowershareEnabled");
+        mSysfsWatcher.watchBoolean(POWERSHARE_ACTIVE, mPowershareActiveCallback, mHandler);
+    }
+
+    private void onPowershareDisabled() {
+        if (DEBUG) Log.d(TAG, "onPowershareDisabled");
+        mSysfsWatcher.unwatch(POWERSHARE_ACTIVE, mPowershareActiveCallback);
+        lastState = false;
+    }
+
+    private void updatePowershareState(boolean active) {
+        if (active) {
+            if (lastState) return;
+            if (DEBUG) Log.d(TAG, "Powershare active");
+            lastState = true;
+            AnimationManager.playCsv("powershare", true);
+        } else {
+            lastState = false;
+        }
+    }
+
+    private final SysfsWatcher.BooleanCallback mPowershareEnabledCallback = enabled -> {
+        if (DEBUG) Log.d(TAG, "Powershare enabled: " + enabled);
+        if (enabled) {
+            onPowershareEnabled();
+        } else {
+            onPowershareDisabled();
+        }
+    };
+
+    private final SysfsWatcher.BooleanCallback mPowershareActiveCallback =
+            this::updatePowershareState;
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Modules;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.io.PrintWriter;
+
+import co.aospa.glyph.Animation.GlyphAnimation;
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Utils.ResourceUtils;
+
+public class VolumeLevelModule extends GlyphModule {
+
+    private static final String TAG = "GlyphVolumeLevelModule";
+    private static final boolean DEBUG = true;
+
+    private static final long FRAME_DURATION_MS = GlyphAnimation.FRAME_DURATION_NANOS / 1_000_000L;
+
+    private AudioManager audioManager;
+
+    // Max volume of every shown stream, read once per enable
+    private final SparseIntArray mMaxVolumes = new SparseIntArray();
+
+    private int mPendingLevel = -1;
+    private long mLastRetargetTime = 0;
+    private int mVolumeChanges = 0;
+    private int mRetargets = 0;
+
+    private Runnable dismissVolume = new Runnable() {
+        @Override
+        public void run() {
+            AnimationManager.dismissVolume();
+        }
+    };
+
+    private final Runnable mRetargetVolume = new Runnable() {
+        @Override
+        public void run() {
+            mLastRetargetTime = SystemClock.uptimeMillis();
+            mRetargets++;
+            AnimationManager.playVolume(mPendingLevel);
+        }
+    };
+
+    public VolumeLevelModule(Context context, Handler handler) {
+        super(context, handler);
+    }
+
+    @Override
+    public String getName() {
+        return "volume";
+    }
+
+    @Override
+    public boolean isEnabledInSettings() {
+        return SettingsManager.isGlyphVolumeLevelEnabled();
+    }
+
+    @Override
+    protected void onEnable() {
+        audioManager = mContext.getSystemService(AudioManager.class);
+
+        mMaxVolumes.clear();
+        for (int stream : ResourceUtils.getIntArray("glyph_settings_volume_streams")) {
+            mMaxVolumes.put(stream, audioManager.getStreamMaxVolume(stream));
+        }
+
+        mContext.registerReceiver(mVolumeReceiver,
+                new IntentFilter(AudioManager.VOLUME_CHANGED_ACTION), null, mHandler);
+    }
+
+    @Override
+    protected void onDisable() {
+        mContext.unregisterReceiver(mVolumeReceiver);
+        mHandler.removeCallbacks(mRetargetVolume);
+        mHandler.removeCallbacks(dismissVolume);
+    }
+
+    private void onVolumeChanged(int stream, int volume, int previousVolume) {
+        int maxVolume = mMaxVolumes.get(stream, -1);
+        if (maxVolume <= 0 || volume == previousVolume) return;
+        mVolumeChanges++;
+
+        if (mHandler.hasCallbacks(dismissVolume))
+            mHandler.removeCallbacks(dismissVolume);
+
+        int volumeLevel = (int) (Math.round(100D / maxVolume * volume));
+        if (DEBUG) Log.d(TAG, (volume > previousVolume ? "Increased: " : "Decreased: ")
+                + volumeLevel + " | stream: " + stream);
+
+        // Changes within a frame only retarget the meter once, to the latest level
+        mPendingLevel = volumeLevel;
+        if (!mHandler.hasCallbacks(mRetargetVolume)) {
+            mHandler.postAtTime(mRetargetVolume, Math.max(SystemClock.uptimeMillis(),
+                    mLastRetargetTime + FRAME_DURATION_MS));
+        }
+
+        mHandler.postDelayed(dismissVolume, 3000);
+    }
+
+    private final BroadcastReceiver mVolumeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onVolumeChanged(intent.getIntExtra(AudioManager.EXTRA_VOLUME_STREAM_TYPE, -1),
+                    intent.getIntExtra(AudioManager.EXTRA_VOLUME_STREAM_VALUE, -1),
+                    intent.getIntExtra(AudioManager.EXTRA_PREV_VOLUME_STREAM_VALUE, -1));
+        }
+    };
+
+    @Override
+    public void dump(PrintWriter pw) {
+        super.dump(pw);
+        pw.println("    streams: " + mMaxVolumes + " | changes: " + mVolumeChanges
+                + " | retargets: " + mRetargets);
+    }
+}
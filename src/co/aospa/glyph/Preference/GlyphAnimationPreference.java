@@ -30,11 +30,13 @@ import android.widget.FrameLayout;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceViewHolder;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 
 import co.aospa.glyph.R;
+import co.aospa.glyph.Animation.AnimationLoader;
+import co.aospa.glyph.Animation.GlyphAnimation;
 import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Profile.DeviceProfile;
 import co.aospa.glyph.Utils.ResourceUtils;
 
 public class GlyphAnimationPreference extends Preference {
@@ -51,6 +53,8 @@ public class GlyphAnimationPreference extends Preference {
     private String[] animationSlugs;
     private ImageView[] animationImgs;
 
+    private final DeviceProfile mDeviceProfile = DeviceProfile.get();
+
     private View mRootView;
     private final View.OnClickListener mClickListener = v -> performClick(v);
 
@@ -159,54 +163,26 @@ public class GlyphAnimationPreference extends Preference {
             while (!animationTerminated) {
                 while (animationPaused) {}
                 if (DEBUG) Log.d(TAG, "Displaying animation | name: " + animationName);
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                        ResourceUtils.getAnimation(animationName)))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        line = line.replace(" ", "");
-                        line = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
-                        String[] split = line.split(",");
-                        if (Constants.getDevice().equals("phone1") && split.length == 5) { // Phone (1) pattern on Phone (1)
-                            mActivity.runOnUiThread(() -> {
-                                for (int i = 0; i < animationSlugs.length; i++) {
-                                    setGlyphsDrawable(animationImgs[i], Integer.parseInt(split[i]));
-                                }
-                            });
-                        } else if (Constants.getDevice().equals("phone2") && split.length == 5) { // Phone (1) pattern on Phone (2)
-                            mActivity.runOnUiThread(() -> {
-                                    setGlyphsDrawable(animationImgs[0], Integer.parseInt(split[0]));
-                                    setGlyphsDrawable(animationImgs[1], Integer.parseInt(split[0]));
-                                    setGlyphsDrawable(animationImgs[2], Integer.parseInt(split[1]));
-                                    setGlyphsDrawable(animationImgs[3], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[4], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[5], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[6], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[7], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[8], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[9], Integer.parseInt(split[3]));
-                                    setGlyphsDrawable(animationImgs[10], Integer.parseInt(split[4]));
-                            });
-                        } else if (Constants.getDevice().equals("phone2") && split.length == 33) { // Phone (2) pattern on Phone (2)
-                            mActivity.runOnUiThread(() -> {
-                                    setGlyphsDrawable(animationImgs[0], Integer.parseInt(split[0]));
-                                    setGlyphsDrawable(animationImgs[1], Integer.parseInt(split[1]));
-                                    setGlyphsDrawable(animationImgs[2], Integer.parseInt(split[2]));
-                                    setGlyphsDrawable(animationImgs[3], Integer.parseInt(split[3]));
-                                    setGlyphsDrawable(animationImgs[4], Integer.parseInt(split[19]));
-                                    setGlyphsDrawable(animationImgs[5], Integer.parseInt(split[20]));
-                                    setGlyphsDrawable(animationImgs[6], Integer.parseInt(split[21]));
-                                    setGlyphsDrawable(animationImgs[7], Integer.parseInt(split[22]));
-                                    setGlyphsDrawable(animationImgs[8], Integer.parseInt(split[23]));
-                                    setGlyphsDrawable(animationImgs[9], Integer.parseInt(split[25]));
-                                    setGlyphsDrawable(animationImgs[10], Integer.parseInt(split[24]));
-                            });
-                        } else {
-                            if (DEBUG) Log.d(TAG, "Animation line length mismatch | name: " + animationName + " | line: " + line);
-                            updateAnimation(false);
+                try {
+                    GlyphAnimation animation = AnimationLoader.getAnimation(animationName);
+                    int[] previewMap = mDeviceProfile.getPreviewMap(animation.getPatternLength());
+                    for (int f = 0; f < animation.getFrameCount(); f++) {
+                        int[] pattern = animation.getFrame(f);
+                        int[] frame = new int[previewMap.length];
+                        for (int i = 0; i < previewMap.length; i++) {
+                            frame[i] = pattern[previewMap[i]];
                         }
+                        mActivity.runOnUiThread(() -> {
+                            for (int i = 0; i < animationImgs.length; i++) {
+                                setGlyphsDrawable(animationImgs[i], frame[i]);
+                            }
+                        });
                         Thread.sleep(16, 666000);
                     }
                     Thread.sleep(animationTimeBetween);
+                } catch (IOException e) {
+                    if (DEBUG) Log.d(TAG, "Unable to load animation | name: " + animationName + " | exception: " + e);
+                    updateAnimation(false);
                 } catch (Exception e) {
                     if (DEBUG) Log.d(TAG, "Exception while displaying animation | name: " + animationName + " | exception: " + e);
                 } finally {
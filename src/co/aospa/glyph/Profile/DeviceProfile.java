@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Profile;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.Arrays;
+
+import co.aospa.glyph.Utils.ResourceUtils;
+
+/**
+ * Declarative description of the Glyph hardware of a device, loaded from the
+ * per-device resource overlay. Patterns are either native frames (one value per
+ * LED) or zone frames (one value per zone), the index maps precomputed here turn
+ * either of them into a native frame or a preview frame with a single gather.
+ */
+public final class DeviceProfile {
+
+    private static final String TAG = "GlyphDeviceProfile";
+    private static final boolean DEBUG = true;
+
+    private static DeviceProfile sInstance = null;
+
+    private final int mLedCount;
+    private final int mZoneCount;
+    private final int[] mLedZones;
+    private final Segment[] mSegments;
+    private final int mEssentialLed;
+    private final int mBatteryLevels;
+    private final int mVolumeLevels;
+    private final int[] mBatteryLeds;
+    private final int[] mVolumeLeds;
+    private final int[] mPreviewLeds;
+    private final int[] mLedWeights;
+    private final int mPowerBudgetPercent;
+    private final boolean mRemapAveragePooling;
+    private final boolean mRemapSmoothing;
+
+    private final SparseArray<int[]> mSourceZones = new SparseArray<>();
+    private final SparseArray<int[]> mFrameMaps = new SparseArray<>();
+    private final SparseArray<int[]> mPreviewMaps = new SparseArray<>();
+
+    public static final class Segment {
+        public final String name;
+        public final int first;
+        public final int last;
+
+        Segment(String name, int first, int last) {
+            this.name = name;
+            this.first = first;
+            this.last = last;
+        }
+
+        public int size() {
+            return last - first + 1;
+        }
+    }
+
+    public static synchronized DeviceProfile get() {
+        if (sInstance == null)
+            sInstance = new DeviceProfile();
+
+        return sInstance;
+    }
+
+    private DeviceProfile() {
+        mLedCount = ResourceUtils.getInteger("glyph_profile_led_count");
+        mZoneCount = ResourceUtils.getInteger("glyph_profile_zone_count");
+        mEssentialLed = ResourceUtils.getInteger("glyph_profile_essential_led");
+        mBatteryLevels = ResourceUtils.getInteger("glyph_settings_battery_levels_num");
+        mVolumeLevels = ResourceUtils.getInteger("glyph_settings_volume_levels_num");
+        mBatteryLeds = ResourceUtils.getIntArray("glyph_profile_battery_leds");
+        mVolumeLeds = ResourceUtils.getIntArray("glyph_profile_volume_leds");
+        mPreviewLeds = ResourceUtils.getIntArray("glyph_profile_preview_leds");
+        mRemapAveragePooling = "average".equals(ResourceUtils.getString("glyph_profile_remap_pooling"));
+        mRemapSmoothing = ResourceUtils.getBoolean("glyph_profile_remap_smoothing");
+
+        int[] ledZones = ResourceUtils.getIntArray("glyph_profile_led_zones");
+        if (ledZones.length != mLedCount) {
+            Log.e(TAG, "LED zones length " + ledZones.length + " does not match LED count "
+                    + mLedCount + ", falling back to one zone per LED");
+            ledZones = identity(mLedCount);
+        }
+        mLedZones = ledZones;
+
+        int[] ledWeights = ResourceUtils.getIntArray("glyph_profile_led_weights");
+        if (ledWeights.length != mLedCount) {
+            if (ledWeights.length != 0)
+                Log.e(TAG, "LED weights length " + ledWeights.length + " does not match LED count "
+                        + mLedCount + ", falling back to equal weights");
+            ledWeights = new int[mLedCount];
+            Arrays.fill(ledWeights, 1);
+        }
+        mLedWeights = ledWeights;
+        mPowerBudgetPercent = Math.max(0, Math.min(100,
+                ResourceUtils.getInteger("glyph_profile_power_budget_percent")));
+
+        String[] segments = ResourceUtils.getStringArray("glyph_profile_segments");
+        mSegments = new Segment[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            mSegments[i] = parseSegment(segments[i]);
+        }
+
+        // Native frames map one to one, zone frames gather their zone for every LED
+        mFrameMaps.put(mLedCount, identity(mLedCount));
+        if (mZoneCount != mLedCount)
+            mFrameMaps.put(mZoneCount, mLedZones.clone());
+
+        for (int i = 0; i < mFrameMaps.size(); i++) {
+            int[] frameMap = mFrameMaps.valueAt(i);
+            int[] previewMap = new int[mPreviewLeds.length];
+            for (int j = 0; j < mPreviewLeds.length; j++) {
+                previewMap[j] = frameMap[mPreviewLeds[j]];
+            }
+            mPreviewMaps.put(mFrameMaps.keyAt(i), previewMap);
+        }
+
+        if (DEBUG) Log.d(TAG, "Loaded profile | device: " + ResourceUtils.getString("glyph_settings_device")
+                + " | leds: " + mLedCount + " | zones: " + mZoneCount + " | segments: " + mSegments.length);
+    }
+
+    private static Segment parseSegment(String segment) {
+        String[] nameRange = segment.split(":");
+        String[] range = nameRange[nameRange.length - 1].split("-");
+        int first = Integer.parseInt(range[0].trim());
+        int last = range.length > 1 ? Integer.parseInt(range[1].trim()) : first;
+        return new Segment(nameRange.length > 1 ? nameRange[0].trim() : "", first, last);
+    }
+
+    private static int[] identity(int length) {
+        int[] map = new int[length];
+        for (int i = 0; i < length; i++) {
+            map[i] = i;
+        }
+        return map;
+    }
+
+    public int getLedCount() {
+        return mLedCount;
+    }
+
+    public int getZoneCount() {
+        return mZoneCount;
+    }
+
+    public int getLedZone(int led) {
+        return mLedZones[led];
+    }
+
+    public Segment[] getSegments() {
+        return mSegments;
+    }
+
+    /** Index of the essential LED in a native frame. */
+    public int getEssentialLed() {
+        return mEssentialLed;
+    }
+
+    public int getBatteryLevels() {
+        return mBatteryLevels;
+    }
+
+    public int getVolumeLevels() {
+        return mVolumeLevels;
+    }
+
+    public int[] getBatteryLeds() {
+        return mBatteryLeds;
+    }
+
+    public int[] getVolumeLeds() {
+        return mVolumeLeds;
+    }
+
+    /** Relative current draw of every LED in a native frame. */
+    public int[] getLedWeights() {
+        return mLedWeights;
+    }
+
+    /** Highest weighted draw of a frame, in percent of every LED at maximum brightness. */
+    public int getPowerBudgetPercent() {
+        return mPowerBudgetPercent;
+    }
+
+    public boolean isRemapAveragePooling() {
+        return mRemapAveragePooling;
+    }
+
+    public boolean isRemapSmoothing() {
+        return mRemapSmoothing;
+    }
+
+    /**
+     * Returns the zone of every value of a pattern of the given length, either
+     * one value per zone or a frame of a known device layout, or null if
+     * patterns of that length can't be remapped.
+     */
+    public synchronized int[] getSourceZones(int length) {
+        int[] zones = mSourceZones.get(length);
+        if (zones != null) return zones;
+
+        if (length == mZoneCount) {
+            zones = identity(mZoneCount);
+        } else if (length == mLedCount) {
+            zones = mLedZones;
+        } else {
+            int id = ResourceUtils.getIdentifier("glyph_remap_zones_" + length, "array");
+            if (id == 0) return null;
+            zones = ResourceUtils.getIntArray("glyph_remap_zones_" + length);
+            if (zones.length != length) {
+                Log.e(TAG, "Remap zones length " + zones.length + " does not match " + length);
+                return null;
+            }
+        }
+        mSourceZones.put(length, zones);
+        return zones;
+    }
+
+    /**
+     * Returns the map from native LED index to index in a pattern of the given
+     * length, or null if patterns of that length can't be shown on this device.
+     */
+    public int[] getFrameMap(int length) {
+        return mFrameMaps.get(length);
+    }
+
+    /**
+     * Returns the map from preview view index to index in a pattern of the given
+     * length, or null if patterns of that length can't be previewed.
+     */
+    public int[] getPreviewMap(int length) {
+        return mPreviewMaps.get(length);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Sensors;
+
+/**
+ * Decides from accelerometer samples whether the device lies face down. The
+ * device is flipped once it has been face down and still for the time
+ * threshold, and stays flipped until it leaves a slightly more lenient face
+ * down range. Pure Java and allocation free, so it can run per sample on any
+ * thread and be replayed on the host.
+ */
+public final class FlipDetector {
+
+    public static final long DEFAULT_TIME_THRESHOLD_NANOS = 1_000_000_000L;
+    public static final float DEFAULT_ACCELERATION_THRESHOLD = 0.2f;
+    public static final float DEFAULT_Z_ACCELERATION_THRESHOLD = -9.5f;
+    public static final float DEFAULT_Z_ACCELERATION_LENIENCY = 1.0f;
+    public static final float DEFAULT_MOVING_AVERAGE_WEIGHT = 0.5f;
+
+    private static final int STATE_FACE_UP = 0;
+    private static final int STATE_FACE_DOWN = 1;
+    private static final int STATE_FLIPPED = 2;
+
+    private final long mTimeThresholdNanos;
+    private final float mAccelerationThreshold;
+    private final float mZAccelerationThreshold;
+    private final float mZAccelerationThresholdLenient;
+    private final float mMovingAverageWeight;
+
+    private int mState = STATE_FACE_UP;
+    private float mXYAcceleration = 0;
+    private float mZAcceleration = 0;
+    private float mPrevAcceleration = 0;
+    private long mPrevAccelerationTime = 0;
+    private long mFaceDownTime = 0;
+
+    public FlipDetector() {
+        this(DEFAULT_TIME_THRESHOLD_NANOS, DEFAULT_ACCELERATION_THRESHOLD,
+                DEFAULT_Z_ACCELERATION_THRESHOLD, DEFAULT_Z_ACCELERATION_LENIENCY,
+                DEFAULT_MOVING_AVERAGE_WEIGHT);
+    }
+
+    public FlipDetector(long timeThresholdNanos, float accelerationThreshold,
+            float zAccelerationThreshold, float zAccelerationLeniency, float movingAverageWeight) {
+        mTimeThresholdNanos = timeThresholdNanos;
+        mAccelerationThreshold = accelerationThreshold;
+        mZAccelerationThreshold = zAccelerationThreshold;
+        mZAccelerationThresholdLenient = zAccelerationThreshold + zAccelerationLeniency;
+        mMovingAverageWeight = movingAverageWeight;
+    }
+
+    public boolean isFlipped() {
+        return mState == STATE_FLIPPED;
+    }
+
+    /** Timestamp of the sample the device was first seen face down at, for the current state. */
+    public long getFaceDownTimeNanos() {
+        return mFaceDownTime;
+    }
+
+    public void reset() {
+        mState = STATE_FACE_UP;
+        mXYAcceleration = 0;
+        mZAcceleration = 0;
+        mPrevAcceleration = 0;
+        mPrevAccelerationTime = 0;
+        mFaceDownTime = 0;
+    }
+
+    /** Feeds an accelerometer sample, returns true if the flipped state changed. */
+    public boolean onSample(long timestampNanos, float x, float y, float z) {
+        mXYAcceleration = average(mXYAcceleration, x * x + y * y);
+        mZAcceleration = average(mZAcceleration, z);
+
+        if (Math.abs(mXYAcceleration - mPrevAcceleration) > mAccelerationThreshold) {
+            mPrevAcceleration = mXYAcceleration;
+            mPrevAccelerationTime = timestampNanos;
+        }
+
+        switch (mState) {
+            case STATE_FACE_UP:
+                if (mZAcceleration < mZAccelerationThreshold) {
+                    mState = STATE_FACE_DOWN;
+                    mFaceDownTime = timestampNanos;
+                }
+                return false;
+            case STATE_FACE_DOWN:
+                if (mZAcceleration >= mZAccelerationThreshold) {
+                    mState = STATE_FACE_UP;
+                    return false;
+                }
+                boolean moving = timestampNanos - mPrevAccelerationTime <= mTimeThresholdNanos;
+                if (moving || timestampNanos - mFaceDownTime <= mTimeThresholdNanos) return false;
+                mState = STATE_FLIPPED;
+                return true;
+            default:
+                if (mZAcceleration < mZAccelerationThresholdLenient) return false;
+                mState = STATE_FACE_UP;
+                return true;
+        }
+    }
+
+    private float average(float average, float value) {
+        return value + mMovingAverageWeight * (average - value);
+    }
+}
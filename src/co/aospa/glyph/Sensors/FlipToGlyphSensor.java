@@ -13,95 +13,107 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package co.aospa.glyph.Sensors;
 
 import android.annotation.NonNull;
 import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.time.Duration;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.util.Objects;
 import java.util.function.Consumer;
 
-public class FlipToGlyphSensor implements SensorEventListener {
+import co.aospa.glyph.Utils.ResourceUtils;
+
+public class FlipToGlyphSensor implements SensorHub.Listener {
 
     private static final boolean DEBUG = true;
     private static final String TAG = "FlipToGlyphSensor";
 
+    private static final int SENSOR_DELAY_NORMAL_US = 200_000;
+    private static final long HOUR_NANOS = 3_600_000_000_000L;
+
     private boolean isFlipped = false;
     private final Consumer<Boolean> mOnFlip;
 
-    private SensorManager mSensorManager;
-    private Sensor mSensorAccelerometer;
+    private final SensorHub mSensorHub;
     private Context mContext;
-
-    private Duration mTimeThreshold = Duration.ofMillis(1_000L);;
-    private float mAccelerationThreshold = 0.2f;
-    private float mZAccelerationThreshold = -9.5f;
-    private float mZAccelerationThresholdLenient = mZAccelerationThreshold + 1.0f;
-    private float mPrevAcceleration = 0;
-    private long mPrevAccelerationTime = 0;
-    private boolean mZAccelerationIsFaceDown = false;
-    private long mZAccelerationFaceDownTime = 0L;
-
-    private static final float MOVING_AVERAGE_WEIGHT = 0.5f;
-    private final ExponentialMovingAverage mCurrentXYAcceleration =
-            new ExponentialMovingAverage(MOVING_AVERAGE_WEIGHT);
-    private final ExponentialMovingAverage mCurrentZAcceleration =
-            new ExponentialMovingAverage(MOVING_AVERAGE_WEIGHT);
-
-    public FlipToGlyphSensor(Context context, @NonNull Consumer<Boolean> onFlip) {
+    private Handler mHandler;
+
+    private final FlipDetector mFlipDetector = new FlipDetector();
+
+    // Hardware face down sensor, reporting 1 while face down, or -1 to use the accelerometer
+    private int mFaceDownSensorType = -1;
+    private boolean mUseFaceDownSensor = false;
+    private int mSensorType;
+
+    // Trace of the samples and of flips marked by hand, for replay on the host
+    private OutputStream mTraceStream;
+    private FlipTrace.Writer mTraceWriter;
+    private File mTraceFile;
+
+    // Metrics
+    private long mEnabledTime = 0;
+    private long mEnabledDuration = 0;
+    private long mBatches = 0;
+    private long mEvents = 0;
+    private long mDecisions = 0;
+    private long mLastDecisionLatency = 0;
+    private long mTotalDecisionLatency = 0;
+
+    public FlipToGlyphSensor(Context context, @NonNull Consumer<Boolean> onFlip, Handler handler,
+            SensorHub sensorHub) {
         mContext = context;
+        mHandler = handler;
         mOnFlip = Objects.requireNonNull(onFlip);
-        mSensorManager = mContext.getSystemService(SensorManager.class);
-        mSensorAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, false);
+        mSensorHub = sensorHub;
+
+        String faceDownSensor = ResourceUtils.getString("glyph_flip_sensor");
+        if (!faceDownSensor.isEmpty()) {
+            mFaceDownSensorType = mSensorHub.getSensorType(faceDownSensor);
+            if (mFaceDownSensorType == -1) Log.w(TAG, "No face down sensor " + faceDownSensor);
+        }
     }
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() != Sensor.TYPE_ACCELEROMETER) return;
-
-        final float x = event.values[0];
-        final float y = event.values[1];
-        mCurrentXYAcceleration.updateMovingAverage(x * x + y * y);
-        mCurrentZAcceleration.updateMovingAverage(event.values[2]);
-
-        final long curTime = event.timestamp;
-        if (Math.abs(mCurrentXYAcceleration.mMovingAverage - mPrevAcceleration)
-                > mAccelerationThreshold) {
-            mPrevAcceleration = mCurrentXYAcceleration.mMovingAverage;
-            mPrevAccelerationTime = curTime;
-        }
-        final boolean moving = curTime - mPrevAccelerationTime <= mTimeThreshold.toNanos();
-
-        final float zAccelerationThreshold =
-                isFlipped ? mZAccelerationThresholdLenient : mZAccelerationThreshold;
-        final boolean isCurrentlyFaceDown =
-                mCurrentZAcceleration.mMovingAverage < zAccelerationThreshold;
-        final boolean isFaceDownForPeriod = isCurrentlyFaceDown
-                && mZAccelerationIsFaceDown
-                && curTime - mZAccelerationFaceDownTime > mTimeThreshold.toNanos();
-        if (isCurrentlyFaceDown && !mZAccelerationIsFaceDown) {
-            mZAccelerationFaceDownTime = curTime;
-            mZAccelerationIsFaceDown = true;
-        } else if (!isCurrentlyFaceDown) {
-            mZAccelerationIsFaceDown = false;
+    public void onSensorEvent(long timestamp, float x, float y, float z) {
+        mEvents++;
+        if (mTraceWriter != null && !mUseFaceDownSensor) {
+            try {
+                mTraceWriter.writeSample(timestamp, x, y, z);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write flip trace", e);
+                stopTrace();
+            }
         }
 
-        if (!moving && isFaceDownForPeriod && !isFlipped) {
-            onFlip(true);
-        } else if (!isFaceDownForPeriod && isFlipped) {
-            onFlip(false);
+        boolean changed;
+        if (mUseFaceDownSensor) {
+            changed = (x != 0) != isFlipped;
+        } else {
+            changed = mFlipDetector.onSample(timestamp, x, y, z);
         }
+        if (!changed) return;
+
+        // Time from the deciding sample to its delivery, mostly batching latency
+        mLastDecisionLatency = SystemClock.elapsedRealtimeNanos() - timestamp;
+        mTotalDecisionLatency += mLastDecisionLatency;
+        mDecisions++;
+        onFlip(!isFlipped);
     }
 
     @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    public void onBatchDelivered(int events) {
+        mBatches++;
+    }
 
     private void onFlip(boolean flipped) {
         if (DEBUG) Log.d(TAG, "Flipped: " + flipped);
@@ -111,39 +123,88 @@ public class FlipToGlyphSensor implements SensorEventListener {
 
     public void enable() {
         if (DEBUG) Log.d(TAG, "Enabling Sensor");
-        mSensorManager.registerListener(this, mSensorAccelerometer,
-                    SensorManager.SENSOR_DELAY_NORMAL,
+        mFlipDetector.reset();
+        mEnabledTime = SystemClock.elapsedRealtimeNanos();
+        mUseFaceDownSensor = mFaceDownSensorType != -1;
+        if (mUseFaceDownSensor) {
+            mSensorType = mFaceDownSensorType;
+            mSensorHub.subscribe(mSensorType, this, SENSOR_DELAY_NORMAL_US, 0, mHandler);
+        } else {
+            mSensorType = Sensor.TYPE_ACCELEROMETER;
+            mSensorHub.subscribe(mSensorType, this,
+                    SENSOR_DELAY_NORMAL_US,
                     mContext.getResources().getInteger(
-                        com.android.internal.R.integer.config_flipToScreenOffMaxLatencyMicros));
+                        com.android.internal.R.integer.config_flipToScreenOffMaxLatencyMicros),
+                    mHandler);
+        }
     }
 
     public void disable() {
         if (DEBUG) Log.d(TAG, "Disabling Sensor");
-        onFlip(false);
-        mSensorManager.unregisterListener(this, mSensorAccelerometer);
+        if (isFlipped) onFlip(false);
+        mSensorHub.unsubscribe(mSensorType, this);
+        stopTrace();
+        if (mEnabledTime != 0) {
+            mEnabledDuration += SystemClock.elapsedRealtimeNanos() - mEnabledTime;
+            mEnabledTime = 0;
+        }
     }
 
-    private final class ExponentialMovingAverage {
-        private final float mAlpha;
-        private final float mInitialAverage;
-        private float mMovingAverage;
-
-        ExponentialMovingAverage(float alpha) {
-            this(alpha, 0.0f);
-        }
+    /**
+     * Starts recording accelerometer samples to a trace in the given directory.
+     * The detector's decisions aren't recorded, flips are labelled by hand with
+     * markTrace while recording.
+     */
+    public File startTrace(File directory) throws IOException {
+        stopTrace();
+        directory.mkdirs();
+        File file = new File(directory, "flip-" + System.currentTimeMillis() + FlipTrace.EXTENSION);
+        mTraceStream = new BufferedOutputStream(new FileOutputStream(file));
+        mTraceWriter = new FlipTrace.Writer(mTraceStream);
+        mTraceFile = file;
+        if (DEBUG) Log.d(TAG, "Recording flip trace to " + file);
+        return file;
+    }
 
-        ExponentialMovingAverage(float alpha, float initialAverage) {
-            this.mAlpha = alpha;
-            this.mInitialAverage = initialAverage;
-            this.mMovingAverage = initialAverage;
+    /** Labels the trace with the flip state the device was just put in. */
+    public boolean markTrace(boolean flipped) {
+        if (mTraceWriter == null) return false;
+        try {
+            mTraceWriter.writeLabel(SystemClock.elapsedRealtimeNanos(), flipped);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write flip trace", e);
+            stopTrace();
+            return false;
         }
+        return true;
+    }
 
-        void updateMovingAverage(float newValue) {
-            mMovingAverage = newValue + mAlpha * (mMovingAverage - newValue);
+    public File stopTrace() {
+        File file = mTraceFile;
+        if (mTraceStream != null) {
+            try {
+                mTraceStream.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close flip trace", e);
+            }
         }
+        mTraceStream = null;
+        mTraceWriter = null;
+        mTraceFile = null;
+        return file;
+    }
 
-        void reset() {
-            mMovingAverage = this.mInitialAverage;
-        }
+    public void dump(PrintWriter pw) {
+        long enabled = mEnabledDuration
+                + (mEnabledTime != 0 ? SystemClock.elapsedRealtimeNanos() - mEnabledTime : 0);
+        pw.println("    sensor: " + (mUseFaceDownSensor ? "face down" : "accelerometer")
+                + " | flipped: " + isFlipped + " | events: " + mEvents
+                + (mTraceFile != null ? " | tracing to: " + mTraceFile : ""));
+        pw.println("    wakeups per hour: "
+                + (enabled > 0 ? mBatches * HOUR_NANOS / enabled : 0)
+                + " | decisions: " + mDecisions
+                + " | last decision latency: " + mLastDecisionLatency / 1_000_000 + " ms"
+                + " | average decision latency: "
+                + (mDecisions > 0 ? mTotalDecisionLatency / mDecisions / 1_000_000 : 0) + " ms");
     }
-}
\ No newline at end of file
+}
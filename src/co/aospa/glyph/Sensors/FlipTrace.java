@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Sensors;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary trace of accelerometer samples and flip labels, recorded on
+ * the device and replayed through a FlipDetector on the host.
+ *
+ * All values are little endian:
+ *   header: magic "GLYF", u16 version, u16 reserved, i64 start timestamp (ns)
+ *   record: u8 type, u32 time since the previous record (us), then
+ *           sample: f32 x, f32 y, f32 z
+ *           label:  u8 flipped, the flip state the device was put in, marked by
+ *                   hand while recording
+ *
+ * Version 1 traces labelled the detector's own decisions and are refused.
+ */
+public final class FlipTrace {
+
+    public static final String EXTENSION = ".fliptrace";
+
+    private static final int MAGIC = 0x46594c47; // "GLYF"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int TYPE_SAMPLE = 0;
+    private static final int TYPE_LABEL = 1;
+
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final int SAMPLE_SIZE = 12;
+    private static final int LABEL_SIZE = 1;
+
+    public interface Visitor {
+        void onSample(long timestampNanos, float x, float y, float z);
+
+        void onLabel(long timestampNanos, boolean flipped);
+    }
+
+    /** Writes a trace, reusing a single buffer for all records. */
+    public static final class Writer {
+        private final OutputStream mOut;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + SAMPLE_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private long mLastTimestamp = -1;
+
+        public Writer(OutputStream out) {
+            mOut = out;
+        }
+
+        public void writeSample(long timestampNanos, float x, float y, float z) throws IOException {
+            writeHeader(timestampNanos);
+            mBuffer.clear();
+            putRecordHeader(TYPE_SAMPLE, timestampNanos);
+            mBuffer.putFloat(x).putFloat(y).putFloat(z);
+            mOut.write(mBuffer.array(), 0, mBuffer.position());
+        }
+
+        public void writeLabel(long timestampNanos, boolean flipped) throws IOException {
+            writeHeader(timestampNanos);
+            mBuffer.clear();
+            putRecordHeader(TYPE_LABEL, timestampNanos);
+            mBuffer.put((byte) (flipped ? 1 : 0));
+            mOut.write(mBuffer.array(), 0, mBuffer.position());
+        }
+
+        private void writeHeader(long timestampNanos) throws IOException {
+            if (mLastTimestamp >= 0) return;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                    .putLong(timestampNanos);
+            mOut.write(header.array());
+            mLastTimestamp = timestampNanos;
+        }
+
+        private void putRecordHeader(int type, long timestampNanos) {
+            // Deltas are rounded to microseconds, carrying the remainder to the next record
+            long delta = Math.max(0, timestampNanos - mLastTimestamp) / 1000;
+            mLastTimestamp += delta * 1000;
+            mBuffer.put((byte) type).putInt((int) Math.min(delta, 0xffffffffL));
+        }
+    }
+
+    /** Reads a whole trace, calling the visitor for every record in order. */
+    public static void read(InputStream in, Visitor visitor) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        readFully(in, header, HEADER_SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC)
+            throw new IOException("Invalid flip trace magic");
+        int version = buffer.getShort(4) & 0xffff;
+        if (version != VERSION)
+            throw new IOException("Unsupported flip trace version: " + version);
+        long timestamp = buffer.getLong(8);
+
+        byte[] record = new byte[RECORD_HEADER_SIZE + SAMPLE_SIZE];
+        ByteBuffer recordBuffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        while (true) {
+            int type = in.read();
+            if (type < 0) return;
+            record[0] = (byte) type;
+            int size = type == TYPE_SAMPLE ? SAMPLE_SIZE : type == TYPE_LABEL ? LABEL_SIZE : -1;
+            if (size < 0) throw new IOException("Unknown flip trace record type: " + type);
+            readFully(in, record, RECORD_HEADER_SIZE + size, 1);
+
+            timestamp += (recordBuffer.getInt(1) & 0xffffffffL) * 1000;
+            if (type == TYPE_SAMPLE) {
+                visitor.onSample(timestamp, recordBuffer.getFloat(5), recordBuffer.getFloat(9),
+                        recordBuffer.getFloat(13));
+            } else {
+                visitor.onLabel(timestamp, record[5] != 0);
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        readFully(in, buffer, length, 0);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length, int offset)
+            throws IOException {
+        while (offset < length) {
+            int read = in.read(buffer, offset, length - offset);
+            if (read < 0) throw new EOFException("Truncated flip trace");
+            offset += read;
+        }
+    }
+}
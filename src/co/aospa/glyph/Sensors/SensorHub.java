@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Sensors;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Owns a single registration per sensor type for all Glyph features. Every
+ * registration uses the fastest sampling period and the shortest batching
+ * latency requested by its subscribers, and is dropped once the last
+ * subscriber leaves. Events are stored in a primitive ring buffer per sensor
+ * and every subscriber drains it on its own handler, once per batch.
+ */
+public final class SensorHub {
+
+    private static final String TAG = "GlyphSensorHub";
+    private static final boolean DEBUG = true;
+
+    /** Events kept per sensor for subscribers that fall behind. */
+    private static final int RING_CAPACITY = 256;
+    private static final int VALUES_PER_EVENT = 3;
+
+    public interface Listener {
+        void onSensorEvent(long timestampNanos, float x, float y, float z);
+
+        /** Called after the events of a batch were delivered. */
+        default void onBatchDelivered(int events) {}
+    }
+
+    private final SensorManager mSensorManager;
+    private final Handler mHandler;
+    private final SparseArray<Channel> mChannels = new SparseArray<>();
+
+    public SensorHub(Context context, Handler handler) {
+        mSensorManager = context.getSystemService(SensorManager.class);
+        mHandler = handler;
+    }
+
+    public Sensor getDefaultSensor(int sensorType) {
+        return mSensorManager.getDefaultSensor(sensorType);
+    }
+
+    /** Returns the type of the sensor with the given string type, or -1. */
+    public int getSensorType(String stringType) {
+        for (Sensor sensor : mSensorManager.getSensorList(Sensor.TYPE_ALL)) {
+            if (stringType.equals(sensor.getStringType())) return sensor.getType();
+        }
+        return -1;
+    }
+
+    /**
+     * Subscribes to a sensor, events are delivered on the given handler.
+     * Returns false if the device has no such sensor.
+     */
+    public synchronized boolean subscribe(int sensorType, Listener listener,
+            int samplingPeriodUs, int maxReportLatencyUs, Handler handler) {
+        Channel channel = mChannels.get(sensorType);
+        if (channel == null) {
+            Sensor sensor = mSensorManager.getDefaultSensor(sensorType);
+            if (sensor == null) {
+                Log.w(TAG, "No sensor of type " + sensorType);
+                return false;
+            }
+            channel = new Channel(sensor);
+            mChannels.put(sensorType, channel);
+        }
+        channel.add(new Subscriber(channel, listener, samplingPeriodUs, maxReportLatencyUs, handler));
+        return true;
+    }
+
+    public synchronized void unsubscribe(int sensorType, Listener listener) {
+        Channel channel = mChannels.get(sensorType);
+        if (channel != null) channel.remove(listener);
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("SensorHub:");
+        for (int i = 0; i < mChannels.size(); i++) {
+            mChannels.valueAt(i).dump(pw);
+        }
+    }
+
+    private static final class Subscriber implements Runnable {
+        final Channel channel;
+        final Listener listener;
+        final int samplingPeriodUs;
+        final int maxReportLatencyUs;
+        final Handler handler;
+
+        // Guarded by the channel
+        long cursor;
+        boolean drainPending = false;
+        boolean active = true;
+
+        Subscriber(Channel channel, Listener listener, int samplingPeriodUs,
+                int maxReportLatencyUs, Handler handler) {
+            this.channel = channel;
+            this.listener = listener;
+            this.samplingPeriodUs = samplingPeriodUs;
+            this.maxReportLatencyUs = maxReportLatencyUs;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            channel.drain(this);
+        }
+    }
+
+    private final class Channel implements SensorEventListener {
+        private final Sensor mSensor;
+        private final ArrayList<Subscriber> mSubscribers = new ArrayList<>();
+
+        private final long[] mTimestamps = new long[RING_CAPACITY];
+        private final float[] mValues = new float[RING_CAPACITY * VALUES_PER_EVENT];
+        private long mWritten = 0;
+
+        private int mSamplingPeriodUs = -1;
+        private int mMaxReportLatencyUs = -1;
+
+        private long mDelivered = 0;
+        private long mDropped = 0;
+        private int mRegistrations = 0;
+
+        Channel(Sensor sensor) {
+            mSensor = sensor;
+        }
+
+        synchronized void add(Subscriber subscriber) {
+            subscriber.cursor = mWritten;
+            mSubscribers.add(subscriber);
+            updateRegistration();
+        }
+
+        synchronized void remove(Listener listener) {
+            for (int i = mSubscribers.size() - 1; i >= 0; i--) {
+                Subscriber subscriber = mSubscribers.get(i);
+                if (subscriber.listener == listener) {
+                    subscriber.active = false;
+                    subscriber.handler.removeCallbacks(subscriber);
+                    mSubscribers.remove(i);
+                }
+            }
+            updateRegistration();
+        }
+
+        private void updateRegistration() {
+            int samplingPeriodUs = Integer.MAX_VALUE;
+            int maxReportLatencyUs = Integer.MAX_VALUE;
+            for (Subscriber subscriber : mSubscribers) {
+                samplingPeriodUs = Math.min(samplingPeriodUs, subscriber.samplingPeriodUs);
+                maxReportLatencyUs = Math.min(maxReportLatencyUs, subscriber.maxReportLatencyUs);
+            }
+
+            if (mSubscribers.isEmpty()) {
+                if (mSamplingPeriodUs != -1) {
+                    if (DEBUG) Log.d(TAG, "Unregistering " + mSensor.getStringType());
+                    mSensorManager.unregisterListener(this);
+                    mSamplingPeriodUs = -1;
+                    mMaxReportLatencyUs = -1;
+                }
+                return;
+            }
+
+            if (samplingPeriodUs == mSamplingPeriodUs && maxReportLatencyUs == mMaxReportLatencyUs)
+                return;
+
+            if (mSamplingPeriodUs != -1)
+                mSensorManager.unregisterListener(this);
+            if (DEBUG) Log.d(TAG, "Registering " + mSensor.getStringType()
+                    + " | period: " + samplingPeriodUs + " us | latency: " + maxReportLatencyUs + " us");
+            mSensorManager.registerListener(this, mSensor, samplingPeriodUs, maxReportLatencyUs, mHandler);
+            mSamplingPeriodUs = samplingPeriodUs;
+            mMaxReportLatencyUs = maxReportLatencyUs;
+            mRegistrations++;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            synchronized (this) {
+                int index = (int) (mWritten % RING_CAPACITY);
+                mTimestamps[index] = event.timestamp;
+                int count = Math.min(event.values.length, VALUES_PER_EVENT);
+                for (int i = 0; i < VALUES_PER_EVENT; i++) {
+                    mValues[index * VALUES_PER_EVENT + i] = i < count ? event.values[i] : 0f;
+                }
+                mWritten++;
+
+                // One drain per subscriber covers the whole batch
+                for (Subscriber subscriber : mSubscribers) {
+                    if (subscriber.drainPending) continue;
+                    subscriber.drainPending = true;
+                    subscriber.handler.post(subscriber);
+                }
+            }
+        }
+
+        void drain(Subscriber subscriber) {
+            int events = 0;
+            while (true) {
+                long timestamp;
+                float x, y, z;
+                synchronized (this) {
+                    if (!subscriber.active || subscriber.cursor >= mWritten) {
+                        subscriber.drainPending = false;
+                        break;
+                    }
+                    if (mWritten - subscriber.cursor > RING_CAPACITY) {
+                        mDropped += mWritten - subscriber.cursor - RING_CAPACITY;
+                        subscriber.cursor = mWritten - RING_CAPACITY;
+                    }
+                    int index = (int) (subscriber.cursor % RING_CAPACITY);
+                    timestamp = mTimestamps[index];
+                    x = mValues[index * VALUES_PER_EVENT];
+                    y = mValues[index * VALUES_PER_EVENT + 1];
+                    z = mValues[index * VALUES_PER_EVENT + 2];
+                    subscriber.cursor++;
+                    mDelivered++;
+                }
+                subscriber.listener.onSensorEvent(timestamp, x, y, z);
+                events++;
+            }
+            if (events > 0) subscriber.listener.onBatchDelivered(events);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+        synchronized void dump(PrintWriter pw) {
+            pw.println("  " + mSensor.getStringType() + ": subscribers: " + mSubscribers.size()
+                    + " | period: " + mSamplingPeriodUs + " us | latency: " + mMaxReportLatencyUs
+                    + " us | registrations: " + mRegistrations + " | events: " + mWritten
+                    + " | delivered: " + mDelivered + " | dropped: " + mDropped);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.aospa.glyph.Services;
+
+import android.app.Service;
+import android.content.ComponentCallbacks2;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import co.aospa.glyph.Animation.AnimationLoader;
+import co.aospa.glyph.Manager.Compositor;
+import co.aospa.glyph.Manager.RenderGovernor;
+import co.aospa.glyph.Manager.SettingsManager;
+import co.aospa.glyph.Manager.WakeLockManager;
+import co.aospa.glyph.Modules.AutoBrightnessModule;
+import co.aospa.glyph.Modules.CallReceiverModule;
+import co.aospa.glyph.Modules.ChargingModule;
+import co.aospa.glyph.Modules.FlipToGlyphModule;
+import co.aospa.glyph.Modules.GlyphModule;
+import co.aospa.glyph.Modules.MusicVisualizerModule;
+import co.aospa.glyph.Modules.PowershareModule;
+import co.aospa.glyph.Modules.VolumeLevelModule;
+import co.aospa.glyph.Sensors.SensorHub;
+import co.aospa.glyph.Sysfs.SysfsWatcher;
+import co.aospa.glyph.Utils.ServiceUtils;
+
+/**
+ * Hosts every Glyph feature as an in-process module. Modules share a single
+ * event thread, animations run on the AnimationManager render thread. Every
+ * start command reconciles the modules with the current settings.
+ */
+public class GlyphCoreService extends Service {
+
+    private static final String TAG = "GlyphCoreService";
+    private static final boolean DEBUG = true;
+
+    private HandlerThread thread;
+    private Handler mThreadHandler;
+    private SensorHub mSensorHub;
+
+    private final List<GlyphModule> mModules = new ArrayList<>();
+
+    @Override
+    public void onCreate() {
+        if (DEBUG) Log.d(TAG, "Creating service");
+
+        // Add a handler thread shared by all modules
+        thread = new HandlerThread("GlyphCoreService");
+        thread.start();
+        mThreadHandler = new Handler(thread.getLooper());
+
+        // Sensors are registered once for all modules, on the same thread
+        mSensorHub = new SensorHub(this, mThreadHandler);
+
+        mModules.add(new ChargingModule(this, mThreadHandler, mSensorHub));
+        mModules.add(new PowershareModule(this, mThreadHandler));
+        mModules.add(new CallReceiverModule(this, mThreadHandler));
+        mModules.add(new FlipToGlyphModule(this, mThreadHandler, mSensorHub));
+        mModules.add(new MusicVisualizerModule(this, mThreadHandler));
+        mModules.add(new VolumeLevelModule(this, mThreadHandler));
+        mModules.add(new AutoBrightnessModule(this, mThreadHandler, mSensorHub));
+
+        // Policy changes arrive on the module thread, the music visualizer may have to stop
+        RenderGovernor.start(this, mThreadHandler, this::updateModules);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (DEBUG) Log.d(TAG, "Starting service");
+        mThreadHandler.post(this::updateModules);
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (DEBUG) Log.d(TAG, "Destroying service");
+        RenderGovernor.stop(this);
+        mThreadHandler.post(() -> {
+            for (GlyphModule module : mModules) {
+                module.setEnabled(false);
+            }
+        });
+        thread.quitSafely();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Decoded animations are reloaded from the bundle on their next play
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            if (DEBUG) Log.d(TAG, "Trimming memory | level: " + level);
+            AnimationLoader.clearCache();
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void updateModules() {
+        boolean glyphEnabled = SettingsManager.isGlyphEnabled();
+        for (GlyphModule module : mModules) {
+            module.setEnabled(glyphEnabled && module.isEnabledInSettings());
+        }
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        if (args != null && args.length > 0) {
+            runCommand(args, pw);
+            return;
+        }
+
+        // Modules, sensors and the governor change their state on the module thread
+        FutureTask<Void> dump = new FutureTask<>(() -> dumpState(pw), null);
+        mThreadHandler.post(dump);
+        try {
+            dump.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            pw.println("Dump failed: " + e);
+        }
+    }
+
+    private void dumpState(PrintWriter pw) {
+        pw.println("GlyphCoreService:");
+        for (GlyphModule module : mModules) {
+            module.dump(pw);
+        }
+        mSensorHub.dump(pw);
+        SysfsWatcher.get().dump(pw);
+        Compositor.dump(pw);
+        RenderGovernor.dump(pw);
+        WakeLockManager.dump(pw);
+        ServiceUtils.dump(pw);
+    }
+
+    private void runCommand(String[] args, PrintWriter pw) {
+        for (GlyphModule module : mModules) {
+            if (!module.getName().equals(args[0])) continue;
+            String[] moduleArgs = Arrays.copyOfRange(args, 1, args.length);
+            FutureTask<Boolean> command =
+                    new FutureTask<>(() -> module.onCommand(moduleArgs, pw));
+            mThreadHandler.post(command);
+            try {
+                if (!command.get(5, TimeUnit.SECONDS))
+                    pw.println("Unknown command for " + args[0] + ": " + Arrays.toString(moduleArgs));
+            } catch (Exception e) {
+                pw.println("Command failed: " + e);
+            }
+            return;
+        }
+        pw.println("Unknown module: " + args[0]);
+    }
+}
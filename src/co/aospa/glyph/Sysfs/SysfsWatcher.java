@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Sysfs;
+
+import android.os.Handler;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Watches sysfs attributes for all Glyph features on a single thread.
+ * Attributes are kept open and read with pread, changes are picked up by
+ * blocking in poll for the POLLPRI the kernel raises on sysfs_notify.
+ * Attributes whose driver never notifies are polled instead, backing off while
+ * their value doesn't change. Callbacks run on their handler, starting with
+ * the current value, and the last value of every attribute is cached.
+ */
+public final class SysfsWatcher {
+
+    private static final String TAG = "GlyphSysfsWatcher";
+    private static final boolean DEBUG = true;
+
+    private static final int BUFFER_SIZE = 64;
+    private static final long MIN_POLL_INTERVAL_MS = 250;
+    private static final long MAX_POLL_INTERVAL_MS = 2000;
+
+    public interface StringCallback {
+        void onChanged(String value);
+    }
+
+    public interface IntCallback {
+        void onChanged(int value);
+    }
+
+    public interface BooleanCallback {
+        void onChanged(boolean value);
+    }
+
+    private static final class Listener {
+        final Object callback;
+        final StringCallback delivery;
+        final Handler handler;
+
+        Listener(Object callback, StringCallback delivery, Handler handler) {
+            this.callback = callback;
+            this.delivery = delivery;
+            this.handler = handler;
+        }
+    }
+
+    private static final class Attribute {
+        final String path;
+
+        // Guarded by the watcher lock
+        final List<Listener> listeners = new ArrayList<>();
+        String value;
+
+        // Only accessed on the watcher thread
+        FileDescriptor fd;
+        boolean notifies = false;
+        long pollInterval = MIN_POLL_INTERVAL_MS;
+        long nextPollTime = 0;
+        int reads = 0;
+        int changes = 0;
+
+        Attribute(String path) {
+            this.path = path;
+        }
+    }
+
+    private static SysfsWatcher instance;
+
+    private final Object mLock = new Object();
+
+    // Guarded by mLock
+    private final HashMap<String, Attribute> mAttributes = new HashMap<>();
+    private final HashMap<String, String> mValues = new HashMap<>();
+    private final List<Attribute> mRemoved = new ArrayList<>();
+    private boolean mAttributesChanged = false;
+    private Thread mThread;
+    private FileDescriptor[] mWakePipe;
+
+    // Only accessed on the watcher thread, the poll set is rebuilt when it changes
+    private Attribute[] mWatched;
+    private final List<Attribute> mPolled = new ArrayList<>();
+    private StructPollfd[] mPollFds;
+    private boolean mPollSetChanged;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final byte[] mWakeBuffer = new byte[16];
+
+    /** Returns the watcher of the device nodes, shared by all features. */
+    public static synchronized SysfsWatcher get() {
+        if (instance == null) instance = new SysfsWatcher();
+        return instance;
+    }
+
+    private SysfsWatcher() {}
+
+    public void watch(String path, StringCallback callback, Handler handler) {
+        addListener(path, new Listener(callback, callback, handler));
+    }
+
+    /** Watches a numeric attribute, values that are not numbers are reported as 0. */
+    public void watchInt(String path, IntCallback callback, Handler handler) {
+        addListener(path, new Listener(callback,
+                value -> callback.onChanged(parseInt(value)), handler));
+    }
+
+    /** Watches a flag attribute, any non-zero number is reported as true. */
+    public void watchBoolean(String path, BooleanCallback callback, Handler handler) {
+        addListener(path, new Listener(callback,
+                value -> callback.onChanged(parseInt(value) != 0), handler));
+    }
+
+    /** Stops delivering changes to a callback, the attribute is closed with its last callback. */
+    public void unwatch(String path, Object callback) {
+        synchronized (mLock) {
+            Attribute attribute = mAttributes.get(path);
+            if (attribute == null) return;
+            attribute.listeners.removeIf(listener -> listener.callback == callback);
+            if (!attribute.listeners.isEmpty()) return;
+
+            if (DEBUG) Log.d(TAG, "Unwatching " + path);
+            mAttributes.remove(path);
+            mRemoved.add(attribute);
+            mAttributesChanged = true;
+            wake();
+        }
+    }
+
+    /**
+     * Returns the value of an attribute, or null if it can't be read. Watched
+     * attributes return their last value, others are read once and cached,
+     * which suits nodes that don't change at runtime.
+     */
+    public String getString(String path) {
+        synchronized (mLock) {
+            Attribute attribute = mAttributes.get(path);
+            if (attribute != null && attribute.value != null) return attribute.value;
+            if (mValues.containsKey(path)) return mValues.get(path);
+        }
+
+        String value = readOnce(path);
+        synchronized (mLock) {
+            mValues.put(path, value);
+        }
+        return value;
+    }
+
+    public int getInt(String path) {
+        return parseInt(getString(path));
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value.replace("0x", ""));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Could not convert value to int: " + value, e);
+        }
+        return 0;
+    }
+
+    private void addListener(String path, Listener listener) {
+        synchronized (mLock) {
+            Attribute existing = mAttributes.get(path);
+            if (existing != null) {
+                existing.listeners.add(listener);
+                String value = existing.value;
+                if (value != null) listener.handler.post(() -> deliver(existing, listener, value));
+                return;
+            }
+
+            if (DEBUG) Log.d(TAG, "Watching " + path);
+            Attribute attribute = new Attribute(path);
+            attribute.listeners.add(listener);
+            mAttributes.put(path, attribute);
+            mAttributesChanged = true;
+            if (mThread == null) {
+                try {
+                    mWakePipe = Os.pipe();
+                } catch (ErrnoException e) {
+                    Log.e(TAG, "Could not create wake pipe", e);
+                    mAttributes.remove(path);
+                    return;
+                }
+                mThread = new Thread(this::loop, TAG);
+                mThread.start();
+            } else {
+                wake();
+            }
+        }
+    }
+
+    private void deliver(Attribute attribute, Listener listener, String value) {
+        synchronized (mLock) {
+            // Skip listeners removed or values replaced since posting
+            if (mAttributes.get(attribute.path) != attribute
+                    || !attribute.listeners.contains(listener)
+                    || !value.equals(attribute.value)) return;
+        }
+        listener.delivery.onChanged(value);
+    }
+
+    private void wake() {
+        try {
+            Os.write(mWakePipe[1], mWakeBuffer, 0, 1);
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.e(TAG, "Could not wake watcher", e);
+        }
+    }
+
+    private void loop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        FileDescriptor wakeFd;
+        synchronized (mLock) {
+            wakeFd = mWakePipe[0];
+        }
+        mPollSetChanged = true;
+
+        while (true) {
+            synchronized (mLock) {
+                for (Attribute attribute : mRemoved) {
+                    close(attribute);
+                }
+                mRemoved.clear();
+                if (mAttributes.isEmpty()) {
+                    closeQuietly(mWakePipe[0]);
+                    closeQuietly(mWakePipe[1]);
+                    mWakePipe = null;
+                    mThread = null;
+                    mWatched = null;
+                    mPolled.clear();
+                    mPollFds = null;
+                    return;
+                }
+                if (mAttributesChanged || mWatched == null) {
+                    mAttributesChanged = false;
+                    mWatched = mAttributes.values().toArray(new Attribute[0]);
+                    mPollSetChanged = true;
+                }
+            }
+
+            long now = SystemClock.uptimeMillis();
+            long timeout = -1;
+            for (Attribute attribute : mWatched) {
+                if (attribute.fd == null && now >= attribute.nextPollTime) {
+                    open(attribute, now);
+                    // Reading arms the notification, and reports the initial value
+                    if (attribute.fd != null) read(attribute, now);
+                }
+                if (attribute.fd == null || !attribute.notifies) {
+                    long wait = Math.max(0, attribute.nextPollTime - now);
+                    timeout = timeout < 0 ? wait : Math.min(timeout, wait);
+                }
+            }
+
+            if (mPollSetChanged) rebuildPollSet(wakeFd);
+            List<Attribute> polled = mPolled;
+            StructPollfd[] fds = mPollFds;
+
+            try {
+                Os.poll(fds, (int) timeout);
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    Log.e(TAG, "Could not poll attributes", e);
+                    SystemClock.sleep(MAX_POLL_INTERVAL_MS);
+                }
+                continue;
+            }
+
+            if ((fds[0].revents & OsConstants.POLLIN) != 0) {
+                try {
+                    Os.read(wakeFd, mWakeBuffer, 0, mWakeBuffer.length);
+                } catch (ErrnoException | InterruptedIOException e) {
+                    Log.e(TAG, "Could not drain wake pipe", e);
+                }
+            }
+
+            now = SystemClock.uptimeMillis();
+            for (int i = 0; i < polled.size(); i++) {
+                Attribute attribute = polled.get(i);
+                if ((fds[i + 1].revents & (OsConstants.POLLPRI | OsConstants.POLLERR)) != 0) {
+                    if (!attribute.notifies && DEBUG)
+                        Log.d(TAG, "Attribute notifies changes, stop polling " + attribute.path);
+                    attribute.notifies = true;
+                    read(attribute, now);
+                } else if (!attribute.notifies && now >= attribute.nextPollTime) {
+                    read(attribute, now);
+                }
+            }
+        }
+    }
+
+    /** Polls the wake pipe and every open attribute. */
+    private void rebuildPollSet(FileDescriptor wakeFd) {
+        mPollSetChanged = false;
+        mPolled.clear();
+        for (Attribute attribute : mWatched) {
+            if (attribute.fd != null) mPolled.add(attribute);
+        }
+
+        mPollFds = new StructPollfd[mPolled.size() + 1];
+        mPollFds[0] = new StructPollfd();
+        mPollFds[0].fd = wakeFd;
+        mPollFds[0].events = (short) OsConstants.POLLIN;
+        for (int i = 0; i < mPolled.size(); i++) {
+            mPollFds[i + 1] = new StructPollfd();
+            mPollFds[i + 1].fd = mPolled.get(i).fd;
+            mPollFds[i + 1].events = (short) (OsConstants.POLLPRI | OsConstants.POLLERR);
+        }
+    }
+
+    private void open(Attribute attribute, long now) {
+        try {
+            attribute.fd = Os.open(attribute.path, OsConstants.O_RDONLY | OsConstants.O_CLOEXEC, 0);
+            mPollSetChanged = true;
+        } catch (ErrnoException e) {
+            // Retried later, some nodes only appear once their driver is up
+            if (attribute.nextPollTime == 0) Log.w(TAG, "Could not open " + attribute.path, e);
+            attribute.nextPollTime = now + MAX_POLL_INTERVAL_MS;
+        }
+    }
+
+    private void close(Attribute attribute) {
+        if (attribute.fd == null) return;
+        closeQuietly(attribute.fd);
+        attribute.fd = null;
+        mPollSetChanged = true;
+    }
+
+    private static void closeQuietly(FileDescriptor fd) {
+        try {
+            Os.close(fd);
+        } catch (ErrnoException e) {
+            // Ignored, not much we can do anyway
+        }
+    }
+
+    private void read(Attribute attribute, long now) {
+        String value;
+        try {
+            int length = Os.pread(attribute.fd, mBuffer, 0, mBuffer.length, 0);
+            value = new String(mBuffer, 0, Math.max(length, 0), StandardCharsets.US_ASCII).trim();
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.e(TAG, "Could not read " + attribute.path, e);
+            close(attribute);
+            attribute.notifies = false;
+            attribute.nextPollTime = now + MAX_POLL_INTERVAL_MS;
+            return;
+        }
+        attribute.reads++;
+
+        Listener[] listeners;
+        synchronized (mLock) {
+            boolean changed = !value.equals(attribute.value);
+            if (!attribute.notifies) {
+                attribute.pollInterval = changed ? MIN_POLL_INTERVAL_MS
+                        : Math.min(attribute.pollInterval * 2, MAX_POLL_INTERVAL_MS);
+                attribute.nextPollTime = now + attribute.pollInterval;
+            }
+            if (!changed) return;
+
+            attribute.value = value;
+            attribute.changes++;
+            listeners = attribute.listeners.toArray(new Listener[0]);
+        }
+
+        if (DEBUG) Log.d(TAG, "Changed " + attribute.path + ": " + value);
+        for (Listener listener : listeners) {
+            listener.handler.post(() -> deliver(attribute, listener, value));
+        }
+    }
+
+    private String readOnce(String file) {
+        FileDescriptor fd = null;
+        try {
+            fd = Os.open(file, OsConstants.O_RDONLY | OsConstants.O_CLOEXEC, 0);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length = Os.pread(fd, buffer, 0, buffer.length, 0);
+            return new String(buffer, 0, Math.max(length, 0), StandardCharsets.US_ASCII).trim();
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.w(TAG, "Could not read " + file, e);
+            return null;
+        } finally {
+            if (fd != null) closeQuietly(fd);
+        }
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.println("SysfsWatcher:");
+        synchronized (mLock) {
+            pw.println("  thread: " + (mThread != null ? "running" : "stopped"));
+            for (Attribute attribute : mAttributes.values()) {
+                pw.println("  " + attribute.path + ": " + attribute.value
+                        + " | listeners: " + attribute.listeners.size()
+                        + " | " + (attribute.notifies ? "notifies" : "polled")
+                        + " | reads: " + attribute.reads + " | changes: " + attribute.changes);
+            }
+            for (String path : mValues.keySet()) {
+                pw.println("  " + path + ": " + mValues.get(path) + " | cached");
+            }
+        }
+    }
+}
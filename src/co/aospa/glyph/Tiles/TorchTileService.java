@@ -23,13 +23,17 @@ import android.service.quicksettings.TileService;
 
 import co.aospa.glyph.R;
 import co.aospa.glyph.Constants.Constants;
+import co.aospa.glyph.Manager.AnimationManager;
+import co.aospa.glyph.Manager.Compositor;
 import co.aospa.glyph.Manager.StatusManager;
-import co.aospa.glyph.Utils.FileUtils;
-import co.aospa.glyph.Utils.ResourceUtils;
+import co.aospa.glyph.Profile.DeviceProfile;
 
 /** Quick settings tile: Glyph **/
 public class TorchTileService extends TileService {
 
+    // Level the essential LED is left at when the torch is turned off
+    private static final int ESSENTIAL_PERCENT_AFTER_TORCH = 7;
+
     @Override
     public void onStartListening() {
         super.onStartListening();
@@ -58,10 +62,14 @@ public class TorchTileService extends TileService {
 
     private void setEnabled(boolean enabled) {
         StatusManager.setAllLedsActive(enabled);
-        FileUtils.writeAllLed(enabled ? Constants.getMaxBrightness() : 0);
-        if (StatusManager.isEssentialLedActive() && !enabled)
-            FileUtils.writeSingleLed(
-                ResourceUtils.getInteger("glyph_settings_notifs_essential_led"),
-                Constants.getMaxBrightness( )/ 100 * 7);
+        if (enabled) {
+            Compositor.fillLayer(Compositor.LAYER_TORCH, Constants.getMaxBrightness());
+        } else {
+            Compositor.clearLayer(Compositor.LAYER_TORCH);
+            if (StatusManager.isEssentialLedActive())
+                Compositor.setLed(Compositor.LAYER_ESSENTIAL, DeviceProfile.get().getEssentialLed(),
+                        Constants.getPatternBrightness(ESSENTIAL_PERCENT_AFTER_TORCH));
+            if (StatusManager.isCallLedEnabled()) AnimationManager.resumeCall();
+        }
     }
 }
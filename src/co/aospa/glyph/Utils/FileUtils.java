@@ -16,16 +16,20 @@
 
 package co.aospa.glyph.Utils;
 
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 
 import co.aospa.glyph.Constants.Constants;
 
@@ -34,6 +38,16 @@ public final class FileUtils {
     private static final String TAG = "GlyphFileUtils";
     private static final boolean DEBUG = true;
 
+    // Nodes stay open once written to, every write replaces the value at offset 0
+    private static final HashMap<String, FileDescriptor> nodes = new HashMap<>();
+
+    private static final byte[] MODE_ON = { '1' };
+
+    // Frames are formatted into a reused buffer, guarded by the class
+    private static byte[] frameBuffer = new byte[0];
+    private static String modePath;
+    private static String framePath;
+
     public static String readLine(String fileName) {
         String line = null;
         BufferedReader reader = null;
@@ -67,35 +81,92 @@ public final class FileUtils {
         return 0;
     }
 
-    public static void writeLine(String fileName, String value) {
-        String modePath = ResourceUtils.getString("glyph_settings_paths_mode_absolute");
-        BufferedWriter writerMode = null;
-        BufferedWriter writerValue = null;
+    private static synchronized FileDescriptor getNode(String fileName) throws ErrnoException {
+        FileDescriptor fd = nodes.get(fileName);
+        if (fd == null) {
+            fd = Os.open(fileName, OsConstants.O_WRONLY | OsConstants.O_CLOEXEC, 0);
+            nodes.put(fileName, fd);
+        }
+        return fd;
+    }
+
+    private static synchronized void closeNode(String fileName) {
+        FileDescriptor fd = nodes.remove(fileName);
+        if (fd == null) return;
         try {
-            if (!modePath.isBlank()) {
-                writerMode = new BufferedWriter(new FileWriter(modePath));
-                writerMode.write("1");
-            }
-            writerValue = new BufferedWriter(new FileWriter(fileName));
-            writerValue.write(value);
-        } catch (FileNotFoundException e) {
-            Log.w(TAG, "No such file " + fileName + " for writing", e);
-        } catch (IOException e) {
-            Log.e(TAG, "Could not write to file " + fileName, e);
-        } finally {
+            Os.close(fd);
+        } catch (ErrnoException e) {
+            // Ignored, not much we can do anyway
+        }
+    }
+
+    private static void writeNode(String fileName, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        writeNode(fileName, bytes, bytes.length);
+    }
+
+    private static void writeNode(String fileName, byte[] bytes, int length) {
+        // Retry once with a fresh descriptor in case the node was recreated
+        for (int attempt = 0; attempt < 2; attempt++) {
             try {
-                if (writerMode != null) {
-                    writerMode.close();
+                Os.pwrite(getNode(fileName), bytes, 0, length, 0);
+                return;
+            } catch (ErrnoException e) {
+                closeNode(fileName);
+                if (e.errno == OsConstants.ENOENT) {
+                    Log.w(TAG, "No such file " + fileName + " for writing", e);
+                    return;
                 }
-                if (writerValue != null) {
-                    writerValue.close();
-                }
-            } catch (IOException e) {
-                // Ignored, not much we can do anyway
+                if (attempt > 0) Log.e(TAG, "Could not write to file " + fileName, e);
+            } catch (InterruptedIOException e) {
+                Log.e(TAG, "Could not write to file " + fileName, e);
+                return;
             }
         }
     }
 
+    /** Opens the LED nodes ahead of time, so the first frame doesn't pay for it. */
+    public static void openLedNodes() {
+        String[] paths = {
+            ResourceUtils.getString("glyph_settings_paths_mode_absolute"),
+            ResourceUtils.getString("glyph_settings_paths_all_absolute"),
+            ResourceUtils.getString("glyph_settings_paths_frame_absolute"),
+            ResourceUtils.getString("glyph_settings_paths_single_absolute"),
+        };
+        for (String path : paths) {
+            if (path.isBlank()) continue;
+            try {
+                getNode(path);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Could not open LED node " + path, e);
+            }
+        }
+    }
+
+    private static synchronized String getModePath() {
+        if (modePath == null)
+            modePath = ResourceUtils.getString("glyph_settings_paths_mode_absolute");
+        return modePath;
+    }
+
+    private static synchronized String getFramePath() {
+        if (framePath == null)
+            framePath = ResourceUtils.getString("glyph_settings_paths_frame_absolute");
+        return framePath;
+    }
+
+    private static void writeMode() {
+        String path = getModePath();
+        if (!path.isBlank()) {
+            writeNode(path, MODE_ON, MODE_ON.length);
+        }
+    }
+
+    public static void writeLine(String fileName, String value) {
+        writeMode();
+        writeNode(fileName, value);
+    }
+
     public static void writeLine(String fileName, int value) {
         writeLine(fileName, Integer.toString(value));
     }
@@ -117,19 +188,53 @@ public final class FileUtils {
     }
 
     public static void writeFrameLed(String value) {
-        writeLine(ResourceUtils.getString("glyph_settings_paths_frame_absolute"), value);
+        writeLine(getFramePath(), value);
     }
 
-    public static void writeFrameLed(int[] value) {
-        writeFrameLed(Arrays.toString(value).replaceAll("\\[|\\]", "").replace(", ", " "));
+    /** Writes a frame as space separated values, formatted without allocating. */
+    public static synchronized void writeFrameLed(int[] value) {
+        int length = 0;
+        ensureFrameBuffer(value.length);
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) frameBuffer[length++] = ' ';
+            length = appendInt(frameBuffer, length, value[i]);
+        }
+        writeMode();
+        writeNode(getFramePath(), frameBuffer, length);
     }
 
-    public static void writeFrameLed(float[] value) {
-        int[] intValue = new int[value.length];
+    public static synchronized void writeFrameLed(float[] value) {
+        int length = 0;
+        ensureFrameBuffer(value.length);
         for (int i = 0; i < value.length; i++) {
-            intValue[i] = Math.round(value[i]);
+            if (i > 0) frameBuffer[length++] = ' ';
+            length = appendInt(frameBuffer, length, Math.round(value[i]));
+        }
+        writeMode();
+        writeNode(getFramePath(), frameBuffer, length);
+    }
+
+    private static void ensureFrameBuffer(int values) {
+        // Sign, ten digits and a separator per value
+        if (frameBuffer.length < values * 12) frameBuffer = new byte[values * 12];
+    }
+
+    /** Writes the decimal digits of a value at the given offset, returns the new end. */
+    private static int appendInt(byte[] buffer, int offset, int value) {
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[offset++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long bound = 10; remaining >= bound; bound *= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
         }
-        writeFrameLed(intValue);
+        return offset + digits;
     }
 
     public static void writeSingleLed(String led, String value) {
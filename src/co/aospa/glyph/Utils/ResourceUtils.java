@@ -17,16 +17,18 @@
 package co.aospa.glyph.Utils;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.util.Log;
 
-import com.android.internal.util.ArrayUtils;
-
-import java.io.InputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 import co.aospa.glyph.R;
+import co.aospa.glyph.Animation.AnimationBundle;
+import co.aospa.glyph.Animation.AnimationCatalog;
 import co.aospa.glyph.Constants.Constants;
 
 public final class ResourceUtils {
@@ -39,8 +41,8 @@ public final class ResourceUtils {
     private static final AssetManager assetManager = context.getAssets();
     private static final Resources resources = context.getResources();
 
-    private static String[] callAnimations = null;
-    private static String[] notificationAnimations = null;
+    private static AnimationBundle animationBundle = null;
+    private static volatile AnimationCatalog animationCatalog = null;
 
     public static int getIdentifier(String id, String type) {
         return context.getResources().getIdentifier(id, type, context.getPackageName());
@@ -66,63 +68,73 @@ public final class ResourceUtils {
         return context.getResources().getIntArray(getIdentifier(id, "array"));
     }
 
-    public static String[] getCallAnimations() {
-        if (callAnimations == null) {
-            try {
-                String[] assets = assetManager.list("call");
-                for (int i=0; i < assets.length; i++) {
-                    assets[i] = assets[i].replaceAll(".csv", "");
-                }
-                callAnimations = assets;
-            } catch (IOException e) { }
+    /**
+     * Returns the animation bundle of the device, memory mapped straight from the
+     * APK. The bundle is packed at build time, without it there is nothing to play.
+     */
+    public static synchronized AnimationBundle getAnimationBundle() {
+        if (animationBundle != null) return animationBundle;
+
+        try (AssetFileDescriptor afd = assetManager.openFd(AnimationBundle.FILE_NAME);
+                FileInputStream stream = afd.createInputStream();
+                FileChannel channel = stream.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            animationBundle = new AnimationBundle(channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength()));
+            if (DEBUG) Log.d(TAG, "Loaded animation bundle | entries: " + animationBundle.size()
+                    + " | size: " + afd.getLength());
+        } catch (IOException e) {
+            throw new IllegalStateException("Animation bundle missing from the APK", e);
         }
-        return callAnimations;
+        return animationBundle;
     }
 
-    public static String[] getNotificationAnimations() {
-        if (notificationAnimations == null) {
-            try {
-                String[] assets = assetManager.list("notification");
-                for (int i=0; i < assets.length; i++) {
-                    assets[i] = assets[i].replaceAll(".csv", "");
-                }
-                notificationAnimations = assets;
-            } catch (IOException e) { }
+    /** Returns the catalog of all animations, built on first use. */
+    public static AnimationCatalog getAnimationCatalog() {
+        AnimationCatalog catalog = animationCatalog;
+        if (catalog != null) return catalog;
+
+        synchronized (ResourceUtils.class) {
+            if (animationCatalog == null) {
+                animationCatalog = AnimationCatalog.fromBundle(getAnimationBundle());
+            }
+            return animationCatalog;
         }
-        return notificationAnimations;
     }
 
-    public static InputStream getCallAnimation(String name) throws IOException {
-        if (callAnimations == null) getCallAnimations();
-
-        if (ArrayUtils.contains(callAnimations, name))
-            return assetManager.open("call/" + name + ".csv");
-
-        return assetManager.open("call/" + ResourceUtils.getString("glyph_settings_call_animations_default") + ".csv");
+    public static String[] getCallAnimations() {
+        return getAnimationCatalog().getNames(AnimationCatalog.CATEGORY_CALL);
     }
 
-    public static InputStream getNotificationAnimation(String name) throws IOException {
-        if (notificationAnimations == null) getNotificationAnimations();
+    public static String[] getNotificationAnimations() {
+        return getAnimationCatalog().getNames(AnimationCatalog.CATEGORY_NOTIFICATION);
+    }
 
-        if (ArrayUtils.contains(notificationAnimations, name))
-            return assetManager.open("notification/" + name + ".csv");
+    private static AnimationCatalog.Entry getAnimationEntry(int category, String name,
+            String defaultId) {
+        AnimationCatalog catalog = getAnimationCatalog();
+        AnimationCatalog.Entry entry = catalog.get(category, name);
+        if (entry != null) return entry;
 
-        return assetManager.open("call/" + ResourceUtils.getString("glyph_settings_notifs_animations_default") + ".csv");
+        if (DEBUG) Log.d(TAG, "Animation not found, using default | name: " + name);
+        return catalog.get(category, getString(defaultId));
     }
 
-    public static InputStream getAnimation(String name) throws IOException {
-        if (callAnimations == null) getCallAnimations();
-        if (notificationAnimations == null) getNotificationAnimations();
-
-        if (ArrayUtils.contains(callAnimations, name)) {
-            return getCallAnimation(name);
-        }
+    /** Returns the call animation with the given name, or the default one. */
+    public static AnimationCatalog.Entry getCallAnimationEntry(String name) {
+        return getAnimationEntry(AnimationCatalog.CATEGORY_CALL, name,
+                "glyph_settings_call_animations_default");
+    }
 
-        if (ArrayUtils.contains(notificationAnimations, name)) {
-            return getNotificationAnimation(name);
-        }
+    /** Returns the notification animation with the given name, or the default one. */
+    public static AnimationCatalog.Entry getNotificationAnimationEntry(String name) {
+        return getAnimationEntry(AnimationCatalog.CATEGORY_NOTIFICATION, name,
+                "glyph_settings_notifs_animations_default");
+    }
 
-        return assetManager.open(name + ".csv");
+    /** Returns the animation with the given name of any category, or null. */
+    public static AnimationCatalog.Entry getAnimationEntry(String name) {
+        return getAnimationCatalog().find(name);
     }
 
 }
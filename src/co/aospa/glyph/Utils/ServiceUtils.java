@@ -20,20 +20,17 @@ package co.aospa.glyph.Utils;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.util.Log;
 
+import java.io.PrintWriter;
+
 import co.aospa.glyph.Constants.Constants;
 import co.aospa.glyph.Manager.AnimationManager;
 import co.aospa.glyph.Manager.SettingsManager;
-import co.aospa.glyph.Manager.StatusManager;
-import co.aospa.glyph.Services.AutoBrightnessService;
-import co.aospa.glyph.Services.CallReceiverService;
-import co.aospa.glyph.Services.ChargingService;
-import co.aospa.glyph.Services.FlipToGlyphService;
-import co.aospa.glyph.Services.MusicVisualizerService;
-import co.aospa.glyph.Services.PowershareService;
-import co.aospa.glyph.Services.VolumeLevelService;
+import co.aospa.glyph.Services.GlyphCoreService;
 
 public final class ServiceUtils {
 
@@ -42,140 +39,93 @@ public final class ServiceUtils {
 
     private static Context context = Constants.CONTEXT;
 
-    private static void startCallReceiverService() {
-        if (DEBUG) Log.d(TAG, "Starting Glyph call receiver service");
-        context.startServiceAsUser(new Intent(context, CallReceiverService.class),
-                UserHandle.CURRENT);
-    }
+    // Changes within this window, like a brightness slider drag, are reconciled once
+    private static final long RECONCILE_DELAY_MS = 150;
 
-    private static void stopCallReceiverService() {
-        if (DEBUG) Log.d(TAG, "Stopping Glyph call receiver service");
-        context.stopServiceAsUser(new Intent(context, CallReceiverService.class),
-                UserHandle.CURRENT);
-    }
+    private static final int FEATURE_CHARGING = 1 << 0;
+    private static final int FEATURE_POWERSHARE = 1 << 1;
+    private static final int FEATURE_CALL = 1 << 2;
+    private static final int FEATURE_FLIP = 1 << 3;
+    private static final int FEATURE_MUSIC_VISUALIZER = 1 << 4;
+    private static final int FEATURE_VOLUME_LEVEL = 1 << 5;
+    private static final int FEATURE_AUTO_BRIGHTNESS = 1 << 6;
 
-    private static void startChargingService() {
-        if (DEBUG) Log.d(TAG, "Starting Glyph charging service");
-        context.startServiceAsUser(new Intent(context, ChargingService.class),
-                UserHandle.CURRENT);
-    }
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Runnable reconcile = ServiceUtils::reconcile;
 
-    private static void stopChargingService() {
-        if (DEBUG) Log.d(TAG, "Stopping Glyph charging service");
-        context.stopServiceAsUser(new Intent(context, ChargingService.class),
-                UserHandle.CURRENT);
-    }
+    // Last applied desired state, -1 until the first reconciliation
+    private static int lastFeatures = -1;
 
-    private static void startFlipToGlyphService() {
-        if (DEBUG) Log.d(TAG, "Starting Flip to Glyph service");
-        context.startServiceAsUser(new Intent(context, FlipToGlyphService.class),
-                UserHandle.CURRENT);
-    }
+    private static int reconciliations = 0;
+    private static int skippedReconciliations = 0;
+    private static int startIpcs = 0;
+    private static int stopIpcs = 0;
 
-    private static void stopFlipToGlyphService() {
-        if (DEBUG) Log.d(TAG, "Stopping Flip to Glyph service");
-        context.stopServiceAsUser(new Intent(context, FlipToGlyphService.class),
+    private static void startGlyphCoreService() {
+        if (DEBUG) Log.d(TAG, "Starting Glyph core service");
+        context.startServiceAsUser(new Intent(context, GlyphCoreService.class),
                 UserHandle.CURRENT);
     }
 
-    public static void startMusicVisualizerService() {
-        if (DEBUG) Log.d(TAG, "Starting Music Visualizer service");
-        context.startServiceAsUser(new Intent(context, MusicVisualizerService.class),
+    private static void stopGlyphCoreService() {
+        if (DEBUG) Log.d(TAG, "Stopping Glyph core service");
+        context.stopServiceAsUser(new Intent(context, GlyphCoreService.class),
                 UserHandle.CURRENT);
     }
 
-    protected static void stopMusicVisualizerService() {
-        if (DEBUG) Log.d(TAG, "Stopping Music Visualizer service");
-        context.stopServiceAsUser(new Intent(context, MusicVisualizerService.class),
-                UserHandle.CURRENT);
-    }
-
-    private static void startPowershareService() {
-        if (DEBUG) Log.d(TAG, "Starting Glyph powershare service");
-        context.startServiceAsUser(new Intent(context, PowershareService.class),
-                UserHandle.CURRENT);
-    }
-
-    private static void stopPowershareService() {
-        if (DEBUG) Log.d(TAG, "Stopping Glyph powershare service");
-        context.stopServiceAsUser(new Intent(context, PowershareService.class),
-                UserHandle.CURRENT);
-    }
-
-    public static void startVolumeLevelService() {
-        if (DEBUG) Log.d(TAG, "Starting Volume Level service");
-        context.startServiceAsUser(new Intent(context, VolumeLevelService.class),
-                UserHandle.CURRENT);
+    private static int getDesiredFeatures() {
+        if (!SettingsManager.isGlyphEnabled()) return 0;
+
+        int features = 0;
+        if (SettingsManager.isGlyphChargingEnabled()) features |= FEATURE_CHARGING;
+        if (SettingsManager.isGlyphPowershareEnabled()) features |= FEATURE_POWERSHARE;
+        if (SettingsManager.isGlyphCallEnabled()) features |= FEATURE_CALL;
+        if (SettingsManager.isGlyphFlipEnabled()) features |= FEATURE_FLIP;
+        if (SettingsManager.isGlyphMusicVisualizerEnabled()) features |= FEATURE_MUSIC_VISUALIZER;
+        if (SettingsManager.isGlyphVolumeLevelEnabled()) features |= FEATURE_VOLUME_LEVEL;
+        if (SettingsManager.isGlyphAutoBrightnessEnabled()) features |= FEATURE_AUTO_BRIGHTNESS;
+        return features;
     }
 
-    protected static void stopVolumeLevelService() {
-        if (DEBUG) Log.d(TAG, "Stopping Volume Listener service");
-        context.stopServiceAsUser(new Intent(context, VolumeLevelService.class),
-                UserHandle.CURRENT);
-    }
-
-    private static void startAutoBrightnessService() {
-        if (DEBUG) Log.d(TAG, "Starting Auto Brightness service");
-        context.startServiceAsUser(new Intent(context, AutoBrightnessService.class),
-                UserHandle.CURRENT);
+    /** Schedules a reconciliation of the Glyph services with the current settings. */
+    public static void checkGlyphService() {
+        handler.removeCallbacks(reconcile);
+        handler.postDelayed(reconcile, RECONCILE_DELAY_MS);
     }
 
-    private static void stopAutoBrightnessService() {
-        if (DEBUG) Log.d(TAG, "Stopping Auto Brightness service");
-        context.stopServiceAsUser(new Intent(context, AutoBrightnessService.class),
-                UserHandle.CURRENT);
-    }
+    private static synchronized void reconcile() {
+        reconciliations++;
 
-    public static void checkGlyphService() {
         if (SettingsManager.isGlyphEnabled()) {
             if (SettingsManager.getGlyphBrightness() != Constants.getBrightness()) {
                 Constants.setBrightness(SettingsManager.getGlyphBrightness());
-                if (StatusManager.isEssentialLedActive())
-                    AnimationManager.playEssential();
-            }
-            if (SettingsManager.isGlyphChargingEnabled()) {
-                startChargingService();
-            } else {
-                stopChargingService();
-            }
-            if (SettingsManager.isGlyphPowershareEnabled()) {
-                startPowershareService();
-            } else {
-                stopPowershareService();
+                AnimationManager.refresh();
             }
-            if (SettingsManager.isGlyphCallEnabled()) {
-                startCallReceiverService();
-            } else {
-                stopCallReceiverService();
-            }
-            if (SettingsManager.isGlyphFlipEnabled()) {
-                startFlipToGlyphService();
-            } else {
-                stopFlipToGlyphService();
-            }
-            if (SettingsManager.isGlyphMusicVisualizerEnabled()) {
-                startMusicVisualizerService();
-            } else {
-                stopMusicVisualizerService();
-            }
-            if (SettingsManager.isGlyphVolumeLevelEnabled()) {
-                startVolumeLevelService();
-            } else {
-                stopVolumeLevelService();
-            }
-            if (SettingsManager.isGlyphAutoBrightnessEnabled()) {
-                startAutoBrightnessService();
-            } else {
-                stopAutoBrightnessService();
-            }
-        } else {
-            stopChargingService();
-            stopPowershareService();
-            stopCallReceiverService();
-            stopFlipToGlyphService();
-            stopMusicVisualizerService();
-            stopVolumeLevelService();
-            stopAutoBrightnessService();
         }
+
+        int features = getDesiredFeatures();
+        if (features == lastFeatures) {
+            skippedReconciliations++;
+            return;
+        }
+        if (DEBUG) Log.d(TAG, "Features changed | from: " + Integer.toBinaryString(Math.max(lastFeatures, 0))
+                + " | to: " + Integer.toBinaryString(features));
+
+        // The core service enables its modules from settings on every start
+        if (features != 0) {
+            startGlyphCoreService();
+            startIpcs++;
+        } else if (lastFeatures != 0) {
+            stopGlyphCoreService();
+            stopIpcs++;
+        }
+        lastFeatures = features;
+    }
+
+    public static synchronized void dump(PrintWriter pw) {
+        pw.println("ServiceUtils:");
+        pw.println("  features: " + Integer.toBinaryString(Math.max(lastFeatures, 0)));
+        pw.println("  reconciliations: " + reconciliations + " | skipped: " + skippedReconciliations);
+        pw.println("  ipcs: start: " + startIpcs + " | stop: " + stopIpcs);
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Tools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import co.aospa.glyph.Animation.AnimationBundle;
+import co.aospa.glyph.Animation.AnimationParser;
+import co.aospa.glyph.Animation.GlyphAnimation;
+
+/**
+ * Host tool packing the CSV animations of one or more asset directories into
+ * an animation bundle. Later directories override animations of earlier ones.
+ *
+ * Usage: AnimationPacker <output> <asset dir>...
+ */
+public final class AnimationPacker {
+
+    private static final String EXTENSION = ".csv";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: AnimationPacker <output> <asset dir>...");
+            System.exit(1);
+        }
+
+        SortedMap<String, GlyphAnimation> animations = new TreeMap<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                collect(Paths.get(args[i]), animations);
+            }
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(Paths.get(args[0])))) {
+                AnimationBundle.write(out, animations);
+            }
+        } catch (IOException e) {
+            System.err.println("AnimationPacker: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void collect(Path root, SortedMap<String, GlyphAnimation> animations)
+            throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(path -> path.toString().endsWith(EXTENSION))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String path = root.relativize(file).toString().replace('\\', '/');
+            path = path.substring(0, path.length() - EXTENSION.length());
+            String name = file.getFileName().toString();
+            name = name.substring(0, name.length() - EXTENSION.length());
+            try (InputStream stream = Files.newInputStream(file)) {
+                animations.put(path, AnimationParser.parse(name, stream));
+            }
+        }
+    }
+}
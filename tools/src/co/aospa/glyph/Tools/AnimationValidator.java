@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import co.aospa.glyph.Animation.AnimationParser;
+import co.aospa.glyph.Animation.GlyphAnimation;
+
+/**
+ * Host tool validating CSV animations and printing per-animation statistics.
+ * Exits with a non-zero status if any animation is malformed, has an
+ * unsupported pattern length or values outside of the brightness range.
+ *
+ * Usage: AnimationValidator [--lengths 5,33] [--max 4095] <asset dir>...
+ */
+public final class AnimationValidator {
+
+    private static final String EXTENSION = ".csv";
+
+    /** Files validated by a single task before it stops splitting. */
+    private static final int BATCH_SIZE = 8;
+
+    private static final class Report {
+        final String path;
+        String error;
+        int patternLength;
+        int frameCount;
+        long durationMs;
+        int identicalFrames;
+        int longestIdenticalRun;
+        long peakBrightness;
+        long averageBrightness;
+
+        Report(String path) {
+            this.path = path;
+        }
+    }
+
+    private static final class ValidateTask extends RecursiveTask<List<Report>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> mFiles;
+        private final int[] mLengths;
+        private final int mMax;
+
+        ValidateTask(List<Path> files, int[] lengths, int max) {
+            mFiles = files;
+            mLengths = lengths;
+            mMax = max;
+        }
+
+        @Override
+        protected List<Report> compute() {
+            if (mFiles.size() > BATCH_SIZE) {
+                int middle = mFiles.size() / 2;
+                ValidateTask left = new ValidateTask(mFiles.subList(0, middle), mLengths, mMax);
+                ValidateTask right = new ValidateTask(mFiles.subList(middle, mFiles.size()),
+                        mLengths, mMax);
+                left.fork();
+                List<Report> reports = new ArrayList<>(right.compute());
+                reports.addAll(0, left.join());
+                return reports;
+            }
+
+            List<Report> reports = new ArrayList<>(mFiles.size());
+            for (Path file : mFiles) {
+                reports.add(validate(file, mLengths, mMax));
+            }
+            return reports;
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] lengths = { 5, 33 };
+        int max = GlyphAnimation.MAX_BRIGHTNESS;
+        List<Path> roots = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--lengths".equals(args[i]) && i + 1 < args.length) {
+                    lengths = Arrays.stream(args[++i].split(","))
+                            .mapToInt(length -> Integer.parseInt(length.trim())).toArray();
+                } else if ("--max".equals(args[i]) && i + 1 < args.length) {
+                    max = Integer.parseInt(args[++i]);
+                } else {
+                    roots.add(Paths.get(args[i]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            roots.clear();
+        }
+
+        if (roots.isEmpty()) {
+            System.err.println("Usage: AnimationValidator [--lengths 5,33] [--max 4095] <asset dir>...");
+            System.exit(1);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try {
+            for (Path root : roots) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files.addAll(walk.filter(path -> path.toString().endsWith(EXTENSION))
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("AnimationValidator: " + e.getMessage());
+            System.exit(1);
+        }
+
+        List<Report> reports = ForkJoinPool.commonPool().invoke(
+                new ValidateTask(files, lengths, max));
+
+        int errors = 0;
+        System.out.println(String.format("%-60s %6s %6s %8s %10s %10s %10s",
+                "animation", "length", "frames", "ms", "same/run", "peak", "average"));
+        for (Report report : reports) {
+            if (report.error != null) {
+                errors++;
+                System.out.println(String.format("%-60s ERROR: %s", report.path, report.error));
+                continue;
+            }
+            System.out.println(String.format("%-60s %6d %6d %8d %5d/%-4d %10d %10d",
+                    report.path, report.patternLength, report.frameCount, report.durationMs,
+                    report.identicalFrames, report.longestIdenticalRun,
+                    report.peakBrightness, report.averageBrightness));
+        }
+        System.out.println(reports.size() + " animations, " + errors + " errors");
+
+        if (errors > 0) System.exit(1);
+    }
+
+    private static Report validate(Path file, int[] lengths, int max) {
+        Report report = new Report(file.toString());
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.length() - EXTENSION.length());
+
+        GlyphAnimation animation;
+        try (InputStream stream = Files.newInputStream(file)) {
+            animation = AnimationParser.parse(name, stream);
+        } catch (IOException e) {
+            report.error = e.getMessage();
+            return report;
+        }
+
+        report.patternLength = animation.getPatternLength();
+        report.frameCount = animation.getFrameCount();
+        report.durationMs = animation.getDurationMs();
+
+        if (Arrays.stream(lengths).noneMatch(length -> length == report.patternLength)) {
+            report.error = "Unsupported pattern length " + report.patternLength;
+            return report;
+        }
+
+        long totalBrightness = 0;
+        int run = 0;
+        int[] previous = null;
+        for (int f = 0; f < animation.getFrameCount(); f++) {
+            int[] frame = animation.getFrame(f);
+            long sum = 0;
+            for (int i = 0; i < frame.length; i++) {
+                if (frame[i] < 0 || frame[i] > max) {
+                    report.error = "Value " + frame[i] + " out of range 0 - " + max
+                            + " at frame " + (f + 1) + ", index " + i;
+                    return report;
+                }
+                sum += frame[i];
+            }
+            totalBrightness += sum;
+            report.peakBrightness = Math.max(report.peakBrightness, sum);
+
+            // Runs count the frames repeating the one before them
+            if (previous != null && Arrays.equals(previous, frame)) {
+                report.identicalFrames++;
+                run++;
+                report.longestIdenticalRun = Math.max(report.longestIdenticalRun, run);
+            } else {
+                run = 0;
+            }
+            previous = frame;
+        }
+        report.averageBrightness = totalBrightness / report.frameCount;
+        return report;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2024 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.aospa.glyph.Tools;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import co.aospa.glyph.Sensors.FlipDetector;
+import co.aospa.glyph.Sensors.FlipTrace;
+
+/**
+ * Host tool replaying flip traces through a FlipDetector as fast as they can
+ * be read, and comparing its decisions with the labels of every trace. Labels
+ * are the flips marked by hand in the trace, or a "<trace>.labels" file next to
+ * it with one "<ms since the first record> <0|1>" line per flip state change.
+ * Traces without either are refused, an empty labels file marks a trace
+ * without flips.
+ *
+ * Every expected change is matched with the first detected change to the
+ * same state within the window around it. Unmatched expected changes are
+ * false negatives, unmatched detected changes false positives.
+ *
+ * Usage: FlipReplay [--time-ms 1000] [--acceleration 0.2] [--z -9.5]
+ *                   [--leniency 1.0] [--weight 0.5] [--window-ms 3000] <trace or dir>...
+ */
+public final class FlipReplay {
+
+    private static final String LABELS_EXTENSION = ".labels";
+
+    private static final class Change {
+        final long time;
+        final boolean flipped;
+        boolean matched = false;
+
+        Change(long time, boolean flipped) {
+            this.time = time;
+            this.flipped = flipped;
+        }
+    }
+
+    private static final class Result {
+        final String path;
+        String error;
+        long durationNanos;
+        int samples;
+        int expected;
+        int detected;
+        int falsePositives;
+        int falseNegatives;
+        long totalLatencyNanos;
+        long maxLatencyNanos;
+
+        Result(String path) {
+            this.path = path;
+        }
+
+        int matched() {
+            return expected - falseNegatives;
+        }
+    }
+
+    public static void main(String[] args) {
+        long timeThresholdNanos = FlipDetector.DEFAULT_TIME_THRESHOLD_NANOS;
+        float accelerationThreshold = FlipDetector.DEFAULT_ACCELERATION_THRESHOLD;
+        float zThreshold = FlipDetector.DEFAULT_Z_ACCELERATION_THRESHOLD;
+        float zLeniency = FlipDetector.DEFAULT_Z_ACCELERATION_LENIENCY;
+        float weight = FlipDetector.DEFAULT_MOVING_AVERAGE_WEIGHT;
+        long windowNanos = 3_000_000_000L;
+        List<Path> roots = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                boolean hasValue = i + 1 < args.length;
+                if ("--time-ms".equals(args[i]) && hasValue) {
+                    timeThresholdNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                } else if ("--acceleration".equals(args[i]) && hasValue) {
+                    accelerationThreshold = Float.parseFloat(args[++i]);
+                } else if ("--z".equals(args[i]) && hasValue) {
+                    zThreshold = Float.parseFloat(args[++i]);
+                } else if ("--leniency".equals(args[i]) && hasValue) {
+                    zLeniency = Float.parseFloat(args[++i]);
+                } else if ("--weight".equals(args[i]) && hasValue) {
+                    weight = Float.parseFloat(args[++i]);
+                } else if ("--window-ms".equals(args[i]) && hasValue) {
+                    windowNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                } else {
+                    roots.add(Paths.get(args[i]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            roots.clear();
+        }
+
+        if (roots.isEmpty()) {
+            System.err.println("Usage: FlipReplay [--time-ms 1000] [--acceleration 0.2] [--z -9.5] "
+                    + "[--leniency 1.0] [--weight 0.5] [--window-ms 3000] <trace or dir>...");
+            System.exit(1);
+        }
+
+        List<Path> traces = new ArrayList<>();
+        try {
+            for (Path root : roots) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    traces.addAll(walk.filter(path -> path.toString().endsWith(FlipTrace.EXTENSION))
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("FlipReplay: " + e.getMessage());
+            System.exit(1);
+        }
+
+        final long time = timeThresholdNanos;
+        final float acceleration = accelerationThreshold;
+        final float z = zThreshold;
+        final float leniency = zLeniency;
+        final float movingAverageWeight = weight;
+        final long window = windowNanos;
+        List<Result> results = traces.parallelStream()
+                .map(trace -> replay(trace, new FlipDetector(time, acceleration, z, leniency,
+                        movingAverageWeight), window))
+                .collect(Collectors.toList());
+
+        Result total = new Result("total");
+        int errors = 0;
+        System.out.println(String.format("%-50s %8s %8s %8s %8s %6s %6s %10s %10s",
+                "trace", "minutes", "samples", "expected", "detected", "fp", "fn",
+                "avg ms", "max ms"));
+        for (Result result : results) {
+            if (result.error != null) {
+                errors++;
+                System.out.println(String.format("%-50s ERROR: %s", result.path, result.error));
+                continue;
+            }
+            print(result);
+            total.durationNanos += result.durationNanos;
+            total.samples += result.samples;
+            total.expected += result.expected;
+            total.detected += result.detected;
+            total.falsePositives += result.falsePositives;
+            total.falseNegatives += result.falseNegatives;
+            total.totalLatencyNanos += result.totalLatencyNanos;
+            total.maxLatencyNanos = Math.max(total.maxLatencyNanos, result.maxLatencyNanos);
+        }
+        print(total);
+
+        System.out.println(String.format(
+                "%d traces, %d errors | false negative rate: %.3f | false positive rate: %.3f"
+                        + " | false positives per hour: %.2f",
+                results.size(), errors,
+                total.expected > 0 ? (double) total.falseNegatives / total.expected : 0,
+                total.detected > 0 ? (double) total.falsePositives / total.detected : 0,
+                total.durationNanos > 0
+                        ? total.falsePositives * 3_600_000_000_000.0 / total.durationNanos : 0));
+
+        if (errors > 0) System.exit(1);
+    }
+
+    private static void print(Result result) {
+        System.out.println(String.format("%-50s %8.1f %8d %8d %8d %6d %6d %10d %10d",
+                result.path, result.durationNanos / 60_000_000_000.0, result.samples,
+                result.expected, result.detected, result.falsePositives, result.falseNegatives,
+                result.matched() > 0 ? result.totalLatencyNanos / result.matched() / 1_000_000 : 0,
+                result.maxLatencyNanos / 1_000_000));
+    }
+
+    private static Result replay(Path trace, FlipDetector detector, long windowNanos) {
+        Result result = new Result(trace.toString());
+        List<Change> expected = new ArrayList<>();
+        List<Change> detected = new ArrayList<>();
+        long[] range = { -1, -1 };
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(trace))) {
+            FlipTrace.read(in, new FlipTrace.Visitor() {
+                @Override
+                public void onSample(long timestampNanos, float x, float y, float z) {
+                    if (range[0] < 0) range[0] = timestampNanos;
+                    range[1] = timestampNanos;
+                    result.samples++;
+                    if (detector.onSample(timestampNanos, x, y, z))
+                        detected.add(new Change(timestampNanos, detector.isFlipped()));
+                }
+
+                @Override
+                public void onLabel(long timestampNanos, boolean flipped) {
+                    if (range[0] < 0) range[0] = timestampNanos;
+                    expected.add(new Change(timestampNanos, flipped));
+                }
+            });
+
+            Path labels = Paths.get(trace + LABELS_EXTENSION);
+            boolean hasLabels = !expected.isEmpty();
+            if (Files.isRegularFile(labels)) {
+                hasLabels = true;
+                expected.clear();
+                for (String line : Files.readAllLines(labels)) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] fields = line.split("\\s+");
+                    if (fields.length != 2)
+                        throw new IOException("Invalid label: " + line);
+                    expected.add(new Change(range[0] + Long.parseLong(fields[0]) * 1_000_000L,
+                            "1".equals(fields[1])));
+                }
+            }
+            if (!hasLabels)
+                throw new IOException("No labels, mark flips while recording or add "
+                        + labels.getFileName());
+        } catch (IOException | NumberFormatException e) {
+            result.error = e.getMessage();
+            return result;
+        }
+
+        result.durationNanos = Math.max(0, range[1] - range[0]);
+        result.expected = expected.size();
+        result.detected = detected.size();
+        for (Change change : expected) {
+            for (Change decision : detected) {
+                if (decision.matched || decision.flipped != change.flipped) continue;
+                if (Math.abs(decision.time - change.time) > windowNanos) continue;
+                decision.matched = true;
+                change.matched = true;
+                long latency = decision.time - change.time;
+                result.totalLatencyNanos += latency;
+                result.maxLatencyNanos = Math.max(result.maxLatencyNanos, latency);
+                break;
+            }
+            if (!change.matched) result.falseNegatives++;
+        }
+        for (Change decision : detected) {
+            if (!decision.matched) result.falsePositives++;
+        }
+        return result;
+    }
+}